@@ -2,8 +2,10 @@ package Backend.src.main;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class RbtApplication {
   public static void main(String[] args) {
     SpringApplication.run(RbtApplication.class, args);
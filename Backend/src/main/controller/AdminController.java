@@ -0,0 +1,37 @@
+package Backend.src.main.controller;
+
+import Backend.src.main.service.SnapshotService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin")
+@CrossOrigin(origins = "http://localhost:3000")
+public class AdminController {
+
+  private final SnapshotService snapshotService;
+
+  public AdminController(SnapshotService snapshotService) {
+    this.snapshotService = snapshotService;
+  }
+
+  /**
+   * Writes a snapshot of the red-black tree now.
+   */
+  @PostMapping("/snapshot")
+  public ResponseEntity<?> snapshot() {
+    try {
+      Map<String, Object> body = new HashMap<>(snapshotService.snapshot());
+      body.put("ok", true);
+      return ResponseEntity.ok(body);
+    } catch (IOException e) {
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+          .body(Map.of("ok", false, "error", String.valueOf(e.getMessage())));
+    }
+  }
+}
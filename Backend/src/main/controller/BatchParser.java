@@ -0,0 +1,76 @@
+package Backend.src.main.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the newline-delimited JSON bodies of POST /api/insert/batch.
+ */
+public final class BatchParser {
+
+  /**
+   * Thrown for a line that is not valid JSON or does not hold a string value.
+   */
+  public static final class InvalidLineException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    // the number of the line, counting from 1
+    private final int line;
+
+    InvalidLineException(int line, String message) {
+      super(message);
+      this.line = line;
+    }
+
+    /**
+     * @return the number of the invalid line, counting from 1
+     */
+    public int getLine() {
+      return line;
+    }
+  }
+
+  private BatchParser() {
+  }
+
+  /**
+   * Reads the values of a newline-delimited JSON body line by line, so only one line of the body
+   * is held in memory besides the values. Every non-blank line holds either a JSON string or an
+   * object with a "value" field, like the body of /insert; blank lines are skipped.
+   *
+   * @param body   the request body, with lines ending in LF or CRLF
+   * @param mapper the mapper that parses each line
+   * @return the values in the order of their lines, empty when every line is blank
+   * @throws InvalidLineException for the first line that holds no string value
+   * @throws IOException          if the body can't be read
+   */
+  public static List<String> parseNdjson(BufferedReader body, ObjectMapper mapper)
+      throws IOException {
+    List<String> values = new ArrayList<>();
+    int number = 0;
+    for (String text = body.readLine(); text != null; text = body.readLine()) {
+      number++;
+      if (text.isBlank()) {
+        continue;
+      }
+      JsonNode line;
+      try {
+        line = mapper.readTree(text);
+      } catch (JsonProcessingException e) {
+        throw new InvalidLineException(number, String.valueOf(e.getOriginalMessage()));
+      }
+      JsonNode value = line.isTextual() ? line : line.path("value");
+      if (!value.isTextual()) {
+        throw new InvalidLineException(number, "Expected a string value");
+      }
+      values.add(value.asText());
+    }
+    return values;
+  }
+}
@@ -1,9 +1,19 @@
 package Backend.src.main.controller;
 
 import Backend.src.main.service.TreeService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -12,9 +22,11 @@ import java.util.Map;
 public class RbtController {
 
   private final TreeService treeService;
+  private final ObjectMapper objectMapper;
 
-  public RbtController(TreeService treeService) {
+  public RbtController(TreeService treeService, ObjectMapper objectMapper) {
     this.treeService = treeService;
+    this.objectMapper = objectMapper;
   }
 
   /**
@@ -25,6 +37,34 @@ public class RbtController {
     return treeService.getTree();
   }
 
+  /**
+   * Returns whether the tree contains a value.
+   */
+  @GetMapping("/tree/contains")
+  public Map<String, Object> contains(@RequestParam String value) {
+    return Map.of("value", value, "present", treeService.contains(value));
+  }
+
+  /**
+   * Returns up to limit values in [from, to], in ascending order. Both bounds are optional.
+   */
+  @GetMapping("/tree/range")
+  public Map<String, Object> range(@RequestParam(required = false) String from,
+      @RequestParam(required = false) String to,
+      @RequestParam(defaultValue = "100") int limit) {
+    return Map.of("values", treeService.range(from, to, limit));
+  }
+
+  /**
+   * Returns the size of the tree and the lock contention counters of the service.
+   */
+  @GetMapping("/tree/stats")
+  public Map<String, Object> stats() {
+    Map<String, Object> stats = new HashMap<>(treeService.lockStats());
+    stats.put("size", treeService.size());
+    return stats;
+  }
+
   /**
    * Inserts a new value into the red-black tree.
    */
@@ -34,4 +74,59 @@ public class RbtController {
     treeService.insert(value);
     return ResponseEntity.ok(Map.of("ok", true));
   }
+
+  /**
+   * Inserts a JSON array of values into the red-black tree in one batch.
+   */
+  @PostMapping(value = "/insert/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<?> insertBatch(@RequestBody List<String> values) {
+    return batchResponse(values);
+  }
+
+  /**
+   * Inserts newline-delimited JSON into the red-black tree in one batch. Every non-blank line holds
+   * either a JSON string or an object with a "value" field, like the body of /insert. The body is
+   * streamed and parsed line by line, in UTF-8 like any JSON, instead of being read into one
+   * String first.
+   */
+  @PostMapping(value = "/insert/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<?> insertBatchNdjson(InputStream body) throws IOException {
+    List<String> values;
+    try {
+      values = BatchParser.parseNdjson(
+          new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)), objectMapper);
+    } catch (BatchParser.InvalidLineException e) {
+      return ResponseEntity.badRequest().body(
+          Map.of("ok", false, "line", e.getLine(), "error", e.getMessage()));
+    }
+    return batchResponse(values);
+  }
+
+  /**
+   * Inserts a parsed batch and reports how many values it held and the size of the tree after it.
+   * Duplicates are kept, so every value of the batch is inserted.
+   */
+  private ResponseEntity<?> batchResponse(List<String> values) {
+    long start = System.nanoTime();
+    try {
+      treeService.insertBatch(values);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body(Map.of("ok", false, "error", e.getMessage()));
+    }
+    return ResponseEntity.ok(Map.of("ok", true, "received", values.size(),
+        "size", treeService.size(), "millis", (System.nanoTime() - start) / 1_000_000));
+  }
+
+  /**
+   * Removes a value from the red-black tree. Only one occurrence is removed unless all=true.
+   */
+  @DeleteMapping("/tree/{value}")
+  public ResponseEntity<?> remove(@PathVariable String value,
+      @RequestParam(defaultValue = "false") boolean all) {
+    int removed = treeService.remove(value, all);
+    if (removed == 0) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("ok", false, "removed", 0));
+    }
+    return ResponseEntity.ok(Map.of("ok", true, "removed", removed));
+  }
 }
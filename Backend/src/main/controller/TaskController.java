@@ -1,37 +1,105 @@
-package com.example.rbt.controller;
+package Backend.src.main.controller;
 
-import com.example.rbt.model.Task;
-import com.example.rbt.service.TaskScheduler;
+import Backend.src.main.model.Task;
+import Backend.src.main.service.TaskDispatcher;
+import Backend.src.main.service.TaskScheduler;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.List;
 
 @RestController
 @RequestMapping("/api/tasks")
 @CrossOrigin(origins = "http://localhost:3000")
 public class TaskController {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final TaskScheduler scheduler;
+    private final TaskDispatcher dispatcher;
 
-    public TaskController(TaskScheduler scheduler) {
+    public TaskController(TaskScheduler scheduler, TaskDispatcher dispatcher) {
         this.scheduler = scheduler;
+        this.dispatcher = dispatcher;
     }
 
+    /**
+     * Schedules a task. A task with a missing or invalid field is rejected before it reaches the
+     * scheduler.
+     */
     @PostMapping("/add")
-    public Map<String, Object> addTask(@RequestBody Map<String, String> body) {
+    public ResponseEntity<?> addTask(@RequestBody Map<String, String> body) {
+        Task task;
+        try {
+            task = parseTask(body);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("ok", false, "error", e.getMessage()));
+        }
+        dispatcher.schedule(task);
+        return ResponseEntity.ok(Map.of("ok", true));
+    }
+
+    /**
+     * Builds a task from the fields of a request body. The window of the task starts at its due
+     * date unless a start is given.
+     *
+     * @throws IllegalArgumentException if the name, due date or priority is missing or invalid
+     * @throws DateTimeParseException   if a date can't be parsed
+     */
+    private static Task parseTask(Map<String, String> body) {
         String name = body.get("name");
-        LocalDateTime dueDate = LocalDateTime.parse(body.get("dueDate"));
-        int priority = Integer.parseInt(body.get("priority"));
-        String description = body.get("description");
+        String dueDate = body.get("dueDate");
+        String priority = body.get("priority");
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("A task needs a name");
+        }
+        if (dueDate == null || priority == null) {
+            throw new IllegalArgumentException("A task needs a due date and a priority");
+        }
+        LocalDateTime due = LocalDateTime.parse(dueDate);
+        LocalDateTime start = body.get("start") == null ? due
+                : LocalDateTime.parse(body.get("start"));
+        int level = Integer.parseInt(priority.trim());
+        if (level < 1 || level > 5) {
+            throw new IllegalArgumentException("Priority must be from 1 to 5");
+        }
+        return new Task(name, start, due, level, body.get("description"));
+    }
 
-        scheduler.addTask(new Task(name, dueDate, priority, description));
-        return Map.of("ok", true);
+    /**
+     * Lists the pending tasks due from from to to, both inclusive and optional, and of one priority
+     * if priority is given, one page of up to limit tasks at a time. The response holds the tasks
+     * and the cursor to pass as after for the next page, which is null after the last page. Tasks
+     * that the dispatcher is about to run are no longer listed.
+     */
+    @GetMapping
+    public ResponseEntity<?> listTasks(@RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) Integer priority,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) String after) {
+        if (limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body(
+                    Map.of("ok", false, "error", "Limit can't exceed " + MAX_PAGE_SIZE));
+        }
+        try {
+            return ResponseEntity.ok(scheduler.page(from == null ? null : LocalDateTime.parse(from),
+                    to == null ? null : LocalDateTime.parse(to), priority, limit, after));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("ok", false, "error", e.getMessage()));
+        }
     }
 
-    @GetMapping("/all")
-    public List<Task> getAllTasks() {
-        return scheduler.getAllTasks();
+    /**
+     * How many tasks ran, how many are pending, and how late they started.
+     */
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>(dispatcher.stats());
+        stats.put("pending", scheduler.size());
+        return stats;
     }
 }
@@ -0,0 +1,154 @@
+package Backend.src.main.model;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * A monoid that a RedBlackTree keeps for every subtree, so that the aggregate of the values in any
+ * key range can be computed in O(log n) time instead of by iterating over the range. The tree
+ * stores the aggregate of each subtree in its root node and recomputes it whenever the children
+ * or the count of a node change, on the insert and remove paths as well as in every rotation.
+ *
+ * combine must be associative and identity must be its neutral element. combine does not need to
+ * be commutative: the tree always combines aggregates in ascending order of their values.
+ *
+ * @param <T> the type of the values stored in the tree
+ * @param <A> the type of the aggregates
+ */
+public interface Augmentation<T, A> {
+
+  /**
+   * @return the aggregate of no values, which leaves every aggregate unchanged when combined
+   */
+  A identity();
+
+  /**
+   * @param value a value stored in the tree
+   * @return the aggregate of the single value
+   */
+  A of(T value);
+
+  /**
+   * Combines the aggregates of two adjacent ranges of values.
+   *
+   * @param left  the aggregate of the smaller values
+   * @param right the aggregate of the larger values
+   * @return the aggregate of both ranges
+   */
+  A combine(A left, A right);
+
+  /**
+   * Computes the aggregate of count occurrences of one value, which is what a node of a multiset
+   * tree stands for. The default combines the single aggregate with itself by repeated doubling in
+   * O(log count) steps; monoids with a closed form should override it.
+   *
+   * @param value a value stored in the tree
+   * @param count the number of occurrences, at least 1
+   * @return the aggregate of count occurrences of value
+   */
+  default A of(T value, int count) {
+    A single = of(value);
+    A result = identity();
+    for (A power = single; count > 0; count >>>= 1) {
+      if ((count & 1) != 0) {
+        result = combine(result, power);
+      }
+      if (count > 1) {
+        power = combine(power, power);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the augmentation that counts the values, including duplicates
+   */
+  static <T> Augmentation<T, Long> count() {
+    return sum(value -> 1L);
+  }
+
+  /**
+   * @param field the number to add up for every value
+   * @return the augmentation that adds up field over the values
+   */
+  static <T> Augmentation<T, Long> sum(ToLongFunction<? super T> field) {
+    return new Augmentation<T, Long>() {
+      @Override
+      public Long identity() {
+        return 0L;
+      }
+
+      @Override
+      public Long of(T value) {
+        return field.applyAsLong(value);
+      }
+
+      @Override
+      public Long of(T value, int count) {
+        return field.applyAsLong(value) * count;
+      }
+
+      @Override
+      public Long combine(Long left, Long right) {
+        return left + right;
+      }
+    };
+  }
+
+  /**
+   * @param field the number to take the minimum of for every value
+   * @return the augmentation that finds the smallest field of the values, which is
+   *         Long.MAX_VALUE for no values
+   */
+  static <T> Augmentation<T, Long> min(ToLongFunction<? super T> field) {
+    return new Augmentation<T, Long>() {
+      @Override
+      public Long identity() {
+        return Long.MAX_VALUE;
+      }
+
+      @Override
+      public Long of(T value) {
+        return field.applyAsLong(value);
+      }
+
+      @Override
+      public Long of(T value, int count) {
+        return field.applyAsLong(value);
+      }
+
+      @Override
+      public Long combine(Long left, Long right) {
+        return Math.min(left, right);
+      }
+    };
+  }
+
+  /**
+   * @param field the number to take the maximum of for every value
+   * @return the augmentation that finds the largest field of the values, which is
+   *         Long.MIN_VALUE for no values
+   */
+  static <T> Augmentation<T, Long> max(ToLongFunction<? super T> field) {
+    return new Augmentation<T, Long>() {
+      @Override
+      public Long identity() {
+        return Long.MIN_VALUE;
+      }
+
+      @Override
+      public Long of(T value) {
+        return field.applyAsLong(value);
+      }
+
+      @Override
+      public Long of(T value, int count) {
+        return field.applyAsLong(value);
+      }
+
+      @Override
+      public Long combine(Long left, Long right) {
+        return Math.max(left, right);
+      }
+    };
+  }
+}
@@ -1,6 +1,24 @@
 package Backend.src.main.model;
+import java.util.Comparator;
+
 public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T> {
 
+  /**
+   * Creates an empty tree that orders its values by their natural ordering.
+   */
+  public BSTRotation() {
+    super();
+  }
+
+  /**
+   * Creates an empty tree that orders its values with the provided comparator.
+   *
+   * @param comparator the ordering for this tree, or null to use the natural ordering
+   */
+  public BSTRotation(Comparator<? super T> comparator) {
+    super(comparator);
+  }
+
 
   /**
    * Performs the rotation operation on the provided nodes within this tree. When the provided child
@@ -43,7 +61,7 @@ public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T> {
    * @param child - This intakes the child node for the rotation
    * @param parent - This takes the parent node for the rotation
    */
-  private void rotateRight(BSTNode<T> child, BSTNode<T> parent) {
+  protected final void rotateRight(BSTNode<T> child, BSTNode<T> parent) {
     //This takes in the grandparent value of the previous parent node
     BSTNode<T> newTree = parent.getUp();
     // The parent and grandparent nodes are updated depending on the vacancies in the tree
@@ -72,6 +90,9 @@ public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T> {
     // The parent node needs to be placed below the child
     child.setRight(parent);
     parent.setUp(child);
+    // The parent is now below the child, so its bookkeeping is refreshed first
+    updateNode(parent);
+    updateNode(child);
   }
 
   /**
@@ -80,7 +101,7 @@ public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T> {
    * @param child - This intakes the child node for the rotation
    * @param parent - This takes the parent node for the rotation
    */
-  private void rotateLeft(BSTNode<T> child, BSTNode<T> parent) {
+  protected final void rotateLeft(BSTNode<T> child, BSTNode<T> parent) {
     //This takes in the grandparent value of the previous parent node
     BSTNode<T> grandparent = parent.getUp();
     // The parent and grandparent nodes are updated depending on the vacancies in the tree
@@ -110,6 +131,9 @@ public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T> {
     // The parent node needs to be placed below the child
     child.setLeft(parent);
     parent.setUp(child);
+    // The parent is now below the child, so its bookkeeping is refreshed first
+    updateNode(parent);
+    updateNode(child);
   }
 
   /** This test does both a right and left rotation on the root node
@@ -0,0 +1,225 @@
+package Backend.src.main.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Throughput benchmarks for the sorted collections. Run the main method with the thread counts to
+ * measure as arguments (1, 2, 4, 8 and 16 by default). It also compares single-threaded ingestion
+ * with and without finger insertion for keys in ascending, nearly ascending and random order, and
+ * trees of tasks ordered by their packed sort keys or by comparing their fields.
+ */
+public class Benchmarks {
+
+  private static final int OPERATIONS_PER_THREAD = 200_000;
+  private static final int ROUNDS = 3;
+  private static final int INGESTED_VALUES = 1_000_000;
+  private static final int TASKS = 500_000;
+
+  // the ordering of tasks before they had packed sort keys, which compares their fields one by one
+  private static final Comparator<Task> FIELD_BY_FIELD = (a, b) -> {
+    int cmp = a.getDueDate().compareTo(b.getDueDate());
+    if (cmp == 0) {
+      cmp = Integer.compare(a.getPriority(), b.getPriority());
+      if (cmp == 0) {
+        cmp = a.getName().compareTo(b.getName());
+      }
+    }
+    return cmp;
+  };
+
+  /**
+   * Measures how insert throughput scales with the number of threads, for the lock-free
+   * ConcurrentSortedCollection and for a RedBlackTree that the threads share behind a lock.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    int[] threadCounts = {1, 2, 4, 8, 16};
+    if (args.length > 0) {
+      threadCounts = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        threadCounts[i] = Integer.parseInt(args[i]);
+      }
+    }
+    System.out.printf("%-28s %8s %16s%n", "collection", "threads", "inserts/second");
+    for (int threads : threadCounts) {
+      report("ConcurrentSortedCollection", threads,
+          insertThroughput(ConcurrentSortedCollection::new, threads, false));
+      report("RedBlackTree with a lock", threads,
+          insertThroughput(RedBlackTree::new, threads, true));
+    }
+
+    // timestamps one second apart, the same timestamps arriving up to 64 places out of order, and
+    // timestamps in random order
+    SplittableRandom random = new SplittableRandom(17);
+    long[] ascending = new long[INGESTED_VALUES];
+    for (int i = 0; i < ascending.length; i++) {
+      ascending[i] = 1_700_000_000_000L + 1000L * i;
+    }
+    long[] nearlyAscending = ascending.clone();
+    long[] shuffled = ascending.clone();
+    for (int i = 0; i < ascending.length; i++) {
+      swap(nearlyAscending, i, Math.min(ascending.length - 1, i + random.nextInt(64)));
+      swap(shuffled, i, i + random.nextInt(ascending.length - i));
+    }
+    // measured on 1M Long keys: ascending 3.1-3.3M/s from the root and 20-28M/s from the finger
+    // (6-8x), nearly ascending 4.0M/s and 4.8-5.8M/s (1.2-1.4x), random 0.5M/s and 0.44-0.46M/s
+    System.out.printf("%n%-28s %16s %16s %8s%n", "keys", "from root/s", "from finger/s",
+        "speedup");
+    reportIngestion("ascending", ascending);
+    reportIngestion("nearly ascending", nearlyAscending);
+    reportIngestion("random", shuffled);
+
+    // tasks due within a year at minute precision, as the scheduler creates them
+    LocalDateTime now = LocalDateTime.of(2026, 1, 1, 0, 0);
+    List<Task> tasks = new ArrayList<>();
+    for (int i = 0; i < TASKS; i++) {
+      tasks.add(new Task("task-" + i, now.plusMinutes(random.nextInt(525_600)),
+          1 + random.nextInt(5), ""));
+    }
+    System.out.printf("%n%-28s %16s %16s%n", "task ordering", "inserts/s", "lookups/s");
+    reportTasks("fields one by one", tasks, FIELD_BY_FIELD);
+    reportTasks("packed sort key", tasks, null);
+  }
+
+  /**
+   * Inserts the tasks into an empty RedBlackTree and looks every one of them up again, and
+   * reports the best rates of a few rounds.
+   *
+   * @param comparator the ordering of the tree, or null for the natural ordering of tasks
+   */
+  private static void reportTasks(String name, List<Task> tasks, Comparator<Task> comparator) {
+    double inserts = 0;
+    double lookups = 0;
+    for (int round = 0; round <= ROUNDS; round++) {
+      RedBlackTree<Task> tree = new RedBlackTree<>(comparator);
+      long begin = System.nanoTime();
+      for (Task task : tasks) {
+        tree.insert(task);
+      }
+      long inserted = System.nanoTime();
+      int found = 0;
+      for (Task task : tasks) {
+        found += tree.contains(task) ? 1 : 0;
+      }
+      long end = System.nanoTime();
+      if (found != tasks.size()) {
+        throw new IllegalStateException("A task was not found.");
+      }
+      if (round > 0) {
+        inserts = Math.max(inserts, tasks.size() / ((inserted - begin) / 1e9));
+        lookups = Math.max(lookups, tasks.size() / ((end - inserted) / 1e9));
+      }
+    }
+    System.out.printf("%-28s %,16.0f %,16.0f%n", name, inserts, lookups);
+  }
+
+  private static void swap(long[] values, int i, int j) {
+    long value = values[i];
+    values[i] = values[j];
+    values[j] = value;
+  }
+
+  private static void reportIngestion(String name, long[] keys) {
+    double fromRoot = ingestionRate(keys, false);
+    double fromFinger = ingestionRate(keys, true);
+    System.out.printf("%-28s %,16.0f %,16.0f %7.1fx%n", name, fromRoot, fromFinger,
+        fromFinger / fromRoot);
+  }
+
+  /**
+   * Inserts the keys into an empty RedBlackTree one by one and returns the best rate of a few
+   * rounds, in inserts per second.
+   *
+   * @param keys   the keys in the order they arrive
+   * @param finger whether the tree uses finger insertion
+   */
+  private static double ingestionRate(long[] keys, boolean finger) {
+    Long[] boxed = new Long[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      boxed[i] = keys[i];
+    }
+    double best = 0;
+    for (int round = 0; round <= ROUNDS; round++) {
+      RedBlackTree<Long> tree = new RedBlackTree<>();
+      tree.setFingerInsertion(finger);
+      long begin = System.nanoTime();
+      for (Long key : boxed) {
+        tree.insert(key);
+      }
+      double seconds = (System.nanoTime() - begin) / 1e9;
+      if (round > 0) {
+        best = Math.max(best, keys.length / seconds);
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Creates a new collection for every round of a benchmark.
+   */
+  private interface Factory {
+    SortedCollection<Integer> create();
+  }
+
+  /**
+   * Lets the threads insert random values into a shared collection and returns the best
+   * throughput of a few rounds, in inserts per second.
+   *
+   * @param factory creates the collection for each round
+   * @param threads the number of inserting threads
+   * @param locked  whether the threads serialize their inserts on a lock
+   */
+  private static double insertThroughput(Factory factory, int threads, boolean locked)
+      throws InterruptedException {
+    double best = 0;
+    // the first round warms the code up and is not counted
+    for (int round = 0; round <= ROUNDS; round++) {
+      SortedCollection<Integer> collection = factory.create();
+      ReentrantLock lock = new ReentrantLock();
+      CountDownLatch start = new CountDownLatch(1);
+      List<Thread> workers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        SplittableRandom random = new SplittableRandom(31L * round + t);
+        workers.add(Thread.ofPlatform().start(() -> {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+            Integer value = random.nextInt();
+            if (locked) {
+              lock.lock();
+              try {
+                collection.insert(value);
+              } finally {
+                lock.unlock();
+              }
+            } else {
+              collection.insert(value);
+            }
+          }
+        }));
+      }
+      long begin = System.nanoTime();
+      start.countDown();
+      for (Thread worker : workers) {
+        worker.join();
+      }
+      double seconds = (System.nanoTime() - begin) / 1e9;
+      if (round > 0) {
+        best = Math.max(best, threads * (double) OPERATIONS_PER_THREAD / seconds);
+      }
+    }
+    return best;
+  }
+
+  private static void report(String name, int threads, double perSecond) {
+    System.out.printf("%-28s %8d %,16.0f%n", name, threads, perSecond);
+  }
+}
@@ -1,56 +1,131 @@
 package Backend.src.main.model;
 import java.lang.Comparable;
+import java.util.Comparator;
 
 public class BinarySearchTree<T extends java.lang.Comparable<T>> implements SortedCollection<T> {
   //Reference to the root node of the binary search tree
   protected BSTNode<T> root;
 
+  //Ordering used by every descent in this tree, or null to use the natural ordering of T
+  protected final Comparator<? super T> comparator;
+
+  /**
+   * Creates an empty tree that orders its values by their natural ordering.
+   */
+  public BinarySearchTree() {
+    this(null);
+  }
+
+  /**
+   * Creates an empty tree that orders its values with the provided comparator.
+   *
+   * @param comparator the ordering for this tree, or null to use the natural ordering
+   */
+  public BinarySearchTree(Comparator<? super T> comparator) {
+    this.comparator = comparator;
+  }
+
   /**
-   * Performs the naive binary search tree insert algorithm to recursively insert the provided
-   * newNode (which has already been initialized with a data value) into the provided tree/subtree.
-   * When the provided subtree is null, this method does nothing.
+   * Performs the binary search tree insert algorithm to insert the provided newNode (which has
+   * already been initialized with a data value) into the provided tree/subtree. The descent is
+   * iterative and uses a single comparison per visited node: values equal to a node's value are
+   * placed to its left. When the provided subtree is null, newNode becomes the root of this tree.
+   *
+   * @param newNode the node to attach to the tree
+   * @param subtree the root of the subtree where the descent starts
    */
   protected void insertHelper(BSTNode<T> newNode, BSTNode<T> subtree) {
     //If the subtree is null, the node in the parameter becomes the root node
     if (subtree == null) {
       root = newNode;
-      subtree.setData(newNode.getData());
+      return;
     }
-    // Case regarding when the value of the data in the node parameter is less than the value of the
-    // subtree data
-    if (newNode.getData().compareTo(subtree.getData()) < 0) {
-      //If the subtree has a null value for its left child, it's replaced with the newNode
-      if (subtree.getLeft() == null) {
-        //The newNode is set as the left child and the subtree is set as the parent node
-        subtree.setLeft(newNode);
-        newNode.setUp(subtree);
-      } else {
-        // If there is a left child value, it recursively goes through the program to be placed
-        // again on the left
-        insertHelper(newNode, subtree.getLeft());
-      }
-      // Case for if the newNode and the subtree value are the same
-    } else if (newNode.getData().compareTo(subtree.getData()) == 0) {
-      //The node is placed to the left, if there is no child node to the left
-      if (subtree.getLeft() == null) {
-        //The newNode is set as the left child and the subtree is set as the parent node
-        subtree.setLeft(newNode);
-        newNode.setUp(subtree);
-      } else {
-        // Otherwise, the value recursively goes through the left side to be placed again
-        insertHelper(newNode, subtree.getLeft());
+    T data = newNode.data;
+    BSTNode<T> parent;
+    boolean goLeft;
+    // The two loops are kept separate so that each one has a single, monomorphic compare call
+    if (comparator == null) {
+      do {
+        parent = subtree;
+        goLeft = data.compareTo(parent.data) <= 0;
+        subtree = goLeft ? parent.left : parent.right;
+      } while (subtree != null);
+    } else {
+      Comparator<? super T> cmp = comparator;
+      do {
+        parent = subtree;
+        goLeft = cmp.compare(data, parent.data) <= 0;
+        subtree = goLeft ? parent.left : parent.right;
+      } while (subtree != null);
+    }
+    //The newNode is set as the child on the chosen side and the parent is set above it
+    if (goLeft) {
+      parent.left = newNode;
+    } else {
+      parent.right = newNode;
+    }
+    newNode.up = parent;
+  }
+
+  /**
+   * Finds a node whose value is equal to the provided key, using one comparison per visited node.
+   * When this tree has a comparator, the key must be a value of type T.
+   *
+   * @param key the value to search for
+   * @return a node holding a value equal to key, or null if there is no such node
+   */
+  @SuppressWarnings("unchecked")
+  protected BSTNode<T> findNode(Comparable<T> key) {
+    BSTNode<T> node = root;
+    if (comparator == null) {
+      while (node != null) {
+        int c = key.compareTo(node.data);
+        if (c == 0) {
+          return node;
+        }
+        node = c < 0 ? node.left : node.right;
       }
     } else {
-      // Case for if the newNode is greater than the subtree value
-      if (subtree.getRight() == null) {
-        //The newNode is set as the right child and the subtree is set as the parent node
-        subtree.setRight(newNode);
-        newNode.setUp(subtree);
-      } else {
-        // Otherwise, the value recursively goes through the right side to be placed again
-        insertHelper(newNode, subtree.getRight());
+      Comparator<? super T> cmp = comparator;
+      T probe = (T) key;
+      while (node != null) {
+        int c = cmp.compare(probe, node.data);
+        if (c == 0) {
+          return node;
+        }
+        node = c < 0 ? node.left : node.right;
       }
     }
+    return null;
+  }
+
+  /**
+   * Compares a key against a value stored in this tree, using this tree's ordering.
+   *
+   * @param key  the key to compare, which must be a value of type T when a comparator is set
+   * @param data a value stored in this tree
+   * @return a negative number, zero, or a positive number as key is less than, equal to, or
+   * greater than data
+   */
+  @SuppressWarnings("unchecked")
+  protected final int compareKey(Comparable<T> key, T data) {
+    return comparator == null ? key.compareTo(data) : comparator.compare((T) key, data);
+  }
+
+  /**
+   * Recomputes any bookkeeping that a node derives from its children. Trees that augment their
+   * nodes override this method; it is called bottom-up whenever the children of a node change.
+   *
+   * @param node the node whose children were changed
+   */
+  protected void updateNode(BSTNode<T> node) {
+  }
+
+  /**
+   * @return the comparator that orders this tree, or null when values use their natural ordering
+   */
+  public Comparator<? super T> comparator() {
+    return comparator;
   }
 
   /**
@@ -66,54 +141,117 @@ public class BinarySearchTree<T extends java.lang.Comparable<T>> implements Sort
     if (data == null) {
       throw new NullPointerException("Bad data");
     }
-    // Create a new Node given the data in the parameter
-    BSTNode<T> newNode = new BSTNode<>(data);
-    // If the root is null, then set the newNode to be the root value of the BST
-    if (root == null) {
-      root = newNode;
-    }
-      // Else, invoke the helper method to place the newNode properly into the BST
-      insertHelper(newNode, root);
+    // Create a new Node given the data in the parameter and place it into the BST (the helper
+    // makes it the root when the tree is empty)
+    insertHelper(new BSTNode<>(data), root);
   }
 
   /**
-   * Check whether data is stored in the tree.
+   * Removes a single occurrence of data from the sorted collection. The node is unlinked with the
+   * naive binary search tree algorithm, replacing a node that has two children with its in-order
+   * successor.
    *
-   * @param data the value to check for in the collection
-   * @return true if the collection contains data one or more times, and false otherwise
+   * @param data the value being removed
+   * @return true if one occurrence of data was removed, and false otherwise
+   * @throws NullPointerException if data argument is null
    */
   @Override
-  public boolean contains(Comparable<T> data) {
-    // Sets the value to the node to root
-    BSTNode<T> finder = root;
-    // Invokes the helper method given the subtree node and the data to be compared to
-    return containsHelper(finder, data);
+  public boolean remove(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Bad data");
+    }
+    BSTNode<T> node = findNode(data);
+    if (node == null) {
+      return false;
+    }
+    if (node.left == null) {
+      transplant(node, node.right);
+    } else if (node.right == null) {
+      transplant(node, node.left);
+    } else {
+      // The successor is the left-most node of the right subtree and has no left child
+      BSTNode<T> successor = minimum(node.right);
+      if (successor.up != node) {
+        transplant(successor, successor.right);
+        successor.right = node.right;
+        successor.right.up = successor;
+      }
+      transplant(node, successor);
+      successor.left = node.left;
+      successor.left.up = successor;
+    }
+    return true;
   }
 
   /**
-   * Helper method for finding if the BST contains the data of a particular node
+   * Removes every occurrence of data from the sorted collection.
    *
-   * @param subtree - Subtree that is being checked for the given data
-   * @param data    - The data that we want to find within the BST
-   * @return True if the data matches a node in the BST, false if not
+   * @param data the value being removed
+   * @return the number of values that were removed
+   * @throws NullPointerException if data argument is null
    */
-  private boolean containsHelper(BSTNode<T> subtree, Comparable<T> data) {
-    // If the subtree is null and has no values there can be no match
-    if (subtree == null) {
-      return false;
+  @Override
+  public int removeAll(T data) throws NullPointerException {
+    int removed = 0;
+    while (remove(data)) {
+      removed++;
     }
-    //If there is a direct match to the subtree, then it returns true
-    if ((data.compareTo(subtree.getData())) == 0) {
-      return true;
-      //If the data value is less than the subtree value, then it recursively checks the left side
-      // of the BST
-    } else if ((data.compareTo(subtree.getData())) < 0) {
-      return containsHelper(subtree.getLeft(), data);
+    return removed;
+  }
+
+  /**
+   * Replaces the subtree rooted at node with the subtree rooted at replacement, by linking
+   * replacement to the parent of node (or making it the root). The children of replacement are
+   * left unchanged.
+   *
+   * @param node        the node being replaced
+   * @param replacement the node taking its place, or null to simply cut node off
+   */
+  protected void transplant(BSTNode<T> node, BSTNode<T> replacement) {
+    BSTNode<T> parent = node.up;
+    if (parent == null) {
+      root = replacement;
+    } else if (parent.left == node) {
+      parent.left = replacement;
     } else {
-      //Otherwise, it checks the right side of the BST if the data value is greater than the subtree
-      // value
-      return containsHelper(subtree.getRight(), data);
+      parent.right = replacement;
+    }
+    if (replacement != null) {
+      replacement.up = parent;
+    }
+  }
+
+  /**
+   * @param subtree the root of a non-empty subtree
+   * @return the node with the smallest value in subtree
+   */
+  protected BSTNode<T> minimum(BSTNode<T> subtree) {
+    while (subtree.left != null) {
+      subtree = subtree.left;
+    }
+    return subtree;
+  }
+
+  /**
+   * @param subtree the root of a non-empty subtree
+   * @return the node with the largest value in subtree
+   */
+  protected BSTNode<T> maximum(BSTNode<T> subtree) {
+    while (subtree.right != null) {
+      subtree = subtree.right;
     }
+    return subtree;
+  }
+
+  /**
+   * Check whether data is stored in the tree.
+   *
+   * @param data the value to check for in the collection
+   * @return true if the collection contains data one or more times, and false otherwise
+   */
+  @Override
+  public boolean contains(Comparable<T> data) {
+    return findNode(data) != null;
   }
 
   /**
@@ -163,11 +301,8 @@ public class BinarySearchTree<T extends java.lang.Comparable<T>> implements Sort
    */
   @Override
   public boolean isEmpty() {
-    //If the size of the tree is 0, found by the size() method, then the tree is empty
-    if (size() == 0) {
-      return true;
-    }
-    return false;
+    //The tree is empty exactly when it has no root, so there is no need to count the nodes
+    return root == null;
   }
 
   /**
@@ -0,0 +1,238 @@
+package Backend.src.main.model;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sorted collection that many threads can update at the same time without locking. The values are
+ * the keys of a ConcurrentSkipListMap that maps every value to the number of times it was
+ * inserted, so duplicates cost no extra nodes and every update is a compare-and-set on one entry.
+ *
+ * Iterators are weakly consistent: they never throw ConcurrentModificationException and return
+ * every value that was in the collection for the whole iteration, but may or may not reflect
+ * updates made while they run. size() is the sum of the counts, which is exact whenever no update
+ * is running.
+ */
+public class ConcurrentSortedCollection<T extends Comparable<T>>
+    implements IterableSortedCollection<T> {
+
+  // a key that lookups search the map for, which may be any Comparable<T> rather than a value
+  private record Bound<T>(Comparable<T> key) {
+  }
+
+  // maps every value to the number of times it was inserted; lookups search it with their key
+  // wrapped in a Bound, which compareKeys compares through the key's own compareTo
+  private final ConcurrentSkipListMap<Object, Integer> counts;
+  private final Comparator<? super T> comparator;
+  private final LongAdder size = new LongAdder();
+  private volatile Comparable<T> iteratorMin = null;
+  private volatile Comparable<T> iteratorMax = null;
+
+  /**
+   * Creates an empty collection that orders its values by their natural ordering.
+   */
+  public ConcurrentSortedCollection() {
+    this(null);
+  }
+
+  /**
+   * Creates an empty collection that orders its values with the provided comparator.
+   *
+   * @param comparator the comparator that orders the values, or null for natural ordering
+   */
+  public ConcurrentSortedCollection(Comparator<? super T> comparator) {
+    this.comparator = comparator;
+    this.counts = new ConcurrentSkipListMap<>(this::compareKeys);
+  }
+
+  /**
+   * Inserts a value, counting it once more if it is already stored.
+   *
+   * @param data the value to insert
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Cannot insert null into the collection.");
+    }
+    counts.merge(data, 1, Integer::sum);
+    size.increment();
+  }
+
+  /**
+   * Removes a single occurrence of a value.
+   *
+   * @param data the value to remove
+   * @return true if an occurrence was removed, false if the collection did not contain data
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean remove(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Cannot remove null from the collection.");
+    }
+    while (true) {
+      Integer count = counts.get(data);
+      if (count == null) {
+        return false;
+      }
+      boolean removed = count == 1 ? counts.remove(data, count)
+          : counts.replace(data, count, count - 1);
+      if (removed) {
+        size.decrement();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Removes every occurrence of a value.
+   *
+   * @param data the value to remove
+   * @return the number of occurrences removed
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public int removeAll(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Cannot remove null from the collection.");
+    }
+    Integer count = counts.remove(data);
+    if (count == null) {
+      return 0;
+    }
+    size.add(-count);
+    return count;
+  }
+
+  /**
+   * Checks whether a value is stored in the collection.
+   *
+   * @param data the value to look for, which must be a value of type T when a comparator is set
+   * @return true if the collection contains data one or more times
+   */
+  @Override
+  public boolean contains(Comparable<T> data) {
+    return data != null && counts.containsKey(new Bound<>(data));
+  }
+
+  /**
+   * @return the number of values in the collection, including duplicates
+   */
+  @Override
+  public int size() {
+    return (int) size.sum();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return counts.isEmpty();
+  }
+
+  /**
+   * Removes every value. Values inserted while the collection is being cleared may or may not
+   * remain.
+   */
+  @Override
+  public void clear() {
+    for (Map.Entry<Object, Integer> entry = counts.pollFirstEntry(); entry != null;
+        entry = counts.pollFirstEntry()) {
+      size.add(-entry.getValue());
+    }
+  }
+
+  @Override
+  public void setIteratorMin(Comparable<T> min) {
+    this.iteratorMin = min;
+  }
+
+  @Override
+  public void setIteratorMax(Comparable<T> max) {
+    this.iteratorMax = max;
+  }
+
+  /**
+   * Returns a weakly consistent iterator over the values in ascending order, limited by the
+   * minimum and maximum set through setIteratorMin and setIteratorMax. A value inserted several
+   * times is returned once per occurrence.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(iteratorMin, iteratorMax);
+  }
+
+  /**
+   * Returns a weakly consistent iterator over the values from min to max, both inclusive, ignoring
+   * the bounds set through setIteratorMin and setIteratorMax. The bounds may be keys that compare
+   * against the values, unless a comparator is set.
+   *
+   * @param min the minimum value to return, or null for no minimum
+   * @param max the maximum value to return, or null for no maximum
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    NavigableMap<Object, Integer> view = min == null ? counts : counts.tailMap(new Bound<>(min));
+    Iterator<Map.Entry<Object, Integer>> entries = view.entrySet().iterator();
+    return new Iterator<>() {
+      private T value = null;
+      // occurrences of value that are still to be returned
+      private int remaining = 0;
+      // true once a value beyond the maximum was seen
+      private boolean done = false;
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public boolean hasNext() {
+        while (remaining == 0 && !done && entries.hasNext()) {
+          Map.Entry<Object, Integer> entry = entries.next();
+          if (max != null && compareBound(max, (T) entry.getKey()) < 0) {
+            done = true;
+          } else {
+            value = (T) entry.getKey();
+            remaining = entry.getValue();
+          }
+        }
+        return remaining > 0;
+      }
+
+      @Override
+      public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException("No more values to return.");
+        }
+        remaining--;
+        return value;
+      }
+    };
+  }
+
+  /**
+   * Orders the keys of the map. Both are values, except for the Bound that a lookup searches for,
+   * which the map may pass as either argument.
+   */
+  @SuppressWarnings("unchecked")
+  private int compareKeys(Object a, Object b) {
+    if (a instanceof Bound<?> bound) {
+      return compareBound(((Bound<T>) bound).key(), (T) b);
+    }
+    if (b instanceof Bound<?> bound) {
+      return -compareBound(((Bound<T>) bound).key(), (T) a);
+    }
+    return comparator == null ? ((T) a).compareTo((T) b) : comparator.compare((T) a, (T) b);
+  }
+
+  /**
+   * Compares a key against a stored value like RedBlackTree.compareKey does: through the key's
+   * own compareTo, or through the comparator, which needs the key to be a value of type T.
+   */
+  @SuppressWarnings("unchecked")
+  private int compareBound(Comparable<T> key, T value) {
+    return comparator == null ? key.compareTo(value) : comparator.compare((T) key, value);
+  }
+}
@@ -0,0 +1,197 @@
+package Backend.src.main.model;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * This class is a red-black tree of int values that stores its nodes in parallel primitive arrays
+ * rather than as RBTNode objects, so a value costs about 16 bytes instead of a node object plus a
+ * boxed Integer. The int methods never box; the methods inherited from IterableSortedCollection
+ * accept and return Integer objects and delegate to them.
+ */
+public class IntRedBlackTree extends PrimitiveRedBlackTree<Integer> {
+
+  // the key of every node, indexed like the link arrays
+  private int[] keys;
+
+  /**
+   * Creates an empty tree with a small default capacity.
+   */
+  public IntRedBlackTree() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty tree with room for the provided number of values before its arrays grow.
+   *
+   * @param initialCapacity the number of values the tree can hold before growing
+   */
+  public IntRedBlackTree(int initialCapacity) {
+    super(initialCapacity);
+  }
+
+  @Override
+  protected void resizeKeys(int capacity) {
+    keys = keys == null ? new int[capacity] : Arrays.copyOf(keys, capacity);
+  }
+
+  @Override
+  protected int compareKey(Comparable<Integer> key, int node) {
+    if (key instanceof Integer) {
+      return Integer.compare((Integer) key, keys[node]);
+    }
+    return key.compareTo(keys[node]);
+  }
+
+  @Override
+  protected Integer keyAt(int node) {
+    return keys[node];
+  }
+
+  /**
+   * Inserts a new value into the tree. Equal values are placed to the left of each other, so
+   * duplicates are kept.
+   *
+   * @param key the new value being inserted
+   */
+  public void insert(int key) {
+    int up = NIL;
+    int node = root;
+    boolean leftSide = false;
+    while (node != NIL) {
+      up = node;
+      leftSide = key <= keys[node];
+      node = leftSide ? left[node] : right[node];
+    }
+    node = allocate();
+    keys[node] = key;
+    attach(node, up, leftSide);
+  }
+
+  /**
+   * Inserts a new value into the tree.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException if data argument is null
+   */
+  @Override
+  public void insert(Integer data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Null values can't be inserted.");
+    }
+    insert(data.intValue());
+  }
+
+  /**
+   * @return the index of a node holding key, or NIL if there is none
+   */
+  private int find(int key) {
+    int node = root;
+    while (node != NIL) {
+      int k = keys[node];
+      if (key == k) {
+        return node;
+      }
+      node = key < k ? left[node] : right[node];
+    }
+    return NIL;
+  }
+
+  /**
+   * @param key the value to check for
+   * @return true if the tree contains key one or more times, and false otherwise
+   */
+  public boolean contains(int key) {
+    return find(key) != NIL;
+  }
+
+  /**
+   * Removes a single occurrence of key from the tree.
+   *
+   * @param key the value being removed
+   * @return true if one occurrence of key was removed, and false otherwise
+   */
+  public boolean remove(int key) {
+    int node = find(key);
+    if (node == NIL) {
+      return false;
+    }
+    removeNode(node);
+    return true;
+  }
+
+  /**
+   * Removes every occurrence of key from the tree.
+   *
+   * @param key the value being removed
+   * @return the number of values that were removed
+   */
+  public int removeAll(int key) {
+    int removed = 0;
+    for (int node = find(key); node != NIL; node = find(key)) {
+      removeNode(node);
+      removed++;
+    }
+    return removed;
+  }
+
+  @Override
+  public boolean remove(Integer data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Null values can't be removed.");
+    }
+    return remove(data.intValue());
+  }
+
+  @Override
+  public int removeAll(Integer data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Null values can't be removed.");
+    }
+    return removeAll(data.intValue());
+  }
+
+  /**
+   * Returns an iterator over the values in ascending order, limited by the minimum and maximum set
+   * through setIteratorMin and setIteratorMax. The iterator follows the parent links, so it
+   * allocates nothing while it runs, and nextInt() returns values without boxing them.
+   */
+  @Override
+  public PrimitiveIterator.OfInt iterator() {
+    return iterator(iteratorMin, iteratorMax);
+  }
+
+  /**
+   * Returns an iterator over the values from min to max, both inclusive, ignoring the bounds set
+   * through setIteratorMin and setIteratorMax.
+   *
+   * @param min the minimum value to return, or null for no minimum
+   * @param max the maximum value to return, or null for no maximum
+   */
+  @Override
+  public PrimitiveIterator.OfInt iterator(Comparable<Integer> min, Comparable<Integer> max) {
+    long range = iteratorRange(min, max);
+    int first = (int) range;
+    int last = (int) (range >>> 32);
+    return new PrimitiveIterator.OfInt() {
+      // index of the node returned by the next call, or NIL when the iterator is finished
+      private int next = first;
+
+      @Override
+      public boolean hasNext() {
+        return next != NIL;
+      }
+
+      @Override
+      public int nextInt() {
+        if (next == NIL) {
+          throw new NoSuchElementException("No more values to return.");
+        }
+        int node = next;
+        next = node == last ? NIL : successor(node);
+        return keys[node];
+      }
+    };
+  }
+
+}
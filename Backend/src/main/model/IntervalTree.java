@@ -0,0 +1,160 @@
+package Backend.src.main.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Red-black tree of values that span closed intervals [start, end] of long endpoints, such as time
+ * windows in epoch milliseconds. The values are ordered by their start, with ties broken by their
+ * natural ordering, and every subtree is augmented with the largest end of its values. A subtree
+ * whose largest end lies before a query, or whose values all start after it, is skipped as a
+ * whole. Finding whether any value overlaps a query takes O(log n) time, and reporting the k
+ * values that overlap it only visits the paths down to them, which is O(log n + k) nodes when
+ * they are neighbors and never more than O(min(n, (k + 1) log n)).
+ */
+public class IntervalTree<T extends Comparable<T>> extends IterableRedBlackTree<T> {
+
+  // the endpoints of the interval a value spans
+  private final ToLongFunction<? super T> start;
+  private final ToLongFunction<? super T> end;
+
+  /**
+   * Creates an empty interval tree.
+   *
+   * @param start the start of the interval a value spans
+   * @param end   the end of the interval a value spans, which is not less than its start
+   */
+  public IntervalTree(ToLongFunction<? super T> start, ToLongFunction<? super T> end) {
+    super(Comparator.<T>comparingLong(start).thenComparing(Comparator.naturalOrder()), false,
+        Augmentation.max(end));
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Creates an empty tree with the same endpoints, ordering and augmentation as another one, so
+   * that the two trees can be split and joined.
+   */
+  private IntervalTree(IntervalTree<T> other) {
+    super(other.comparator, other.multiset, other.augmentation);
+    this.start = other.start;
+    this.end = other.end;
+  }
+
+  @Override
+  protected IntervalTree<T> newEmptyTree() {
+    return new IntervalTree<>(this);
+  }
+
+  @Override
+  public IntervalTree<T> split(Comparable<T> key) {
+    return (IntervalTree<T>) super.split(key);
+  }
+
+  @Override
+  public IntervalTree<T> extractRange(Comparable<T> lo, Comparable<T> hi) {
+    return (IntervalTree<T>) super.extractRange(lo, hi);
+  }
+
+  /**
+   * Finds the values whose intervals overlap [from, to], both inclusive, in ascending order of
+   * their start. Only the paths down to the k values found are visited.
+   *
+   * @param from the start of the query interval
+   * @param to   the end of the query interval
+   * @return the overlapping values, which is empty when to is less than from
+   */
+  public List<T> overlapping(long from, long to) {
+    List<T> found = new ArrayList<>();
+    forEachOverlapping(from, to, found::add);
+    return found;
+  }
+
+  /**
+   * Finds the values whose intervals contain point.
+   *
+   * @param point the point to look up
+   * @return the values v with start(v) <= point <= end(v), in ascending order of their start
+   */
+  public List<T> stabbing(long point) {
+    return overlapping(point, point);
+  }
+
+  /**
+   * Passes every value whose interval overlaps [from, to] to action, in ascending order of their
+   * start, without collecting them first.
+   *
+   * @param from   the start of the query interval
+   * @param to     the end of the query interval
+   * @param action the action to run for every overlapping value
+   */
+  public void forEachOverlapping(long from, long to, Consumer<? super T> action) {
+    if (from <= to) {
+      forEachOverlapping(getRoot(), from, to, action);
+    }
+  }
+
+  private void forEachOverlapping(RBTNode<T> node, long from, long to,
+      Consumer<? super T> action) {
+    // a subtree is only entered if one of its values ends at or after from, so it either holds
+    // a result or its values start after to, which ends the search on that side
+    while (node != null && maxEnd(node) >= from) {
+      forEachOverlapping(node.getLeft(), from, to, action);
+      if (start.applyAsLong(node.data) > to) {
+        return;
+      }
+      if (end.applyAsLong(node.data) >= from) {
+        action.accept(node.data);
+      }
+      node = node.getRight();
+    }
+  }
+
+  /**
+   * Finds one value whose interval overlaps [from, to], in O(log n) time. This is the cheap
+   * check for conflicts, for example before booking the window [from, to].
+   *
+   * @param from the start of the query interval
+   * @param to   the end of the query interval
+   * @return the overlapping value that starts first, or null if no value overlaps
+   */
+  public T firstOverlapping(long from, long to) {
+    if (from > to) {
+      return null;
+    }
+    RBTNode<T> node = getRoot();
+    while (node != null && maxEnd(node) >= from) {
+      // once a value on the left ends at or after from, either it overlaps or it starts after
+      // to, and then every value on the right does too
+      if (node.getLeft() != null && maxEnd(node.getLeft()) >= from) {
+        node = node.getLeft();
+      } else if (start.applyAsLong(node.data) > to) {
+        return null;
+      } else if (end.applyAsLong(node.data) >= from) {
+        return node.data;
+      } else {
+        node = node.getRight();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param from the start of the query interval
+   * @param to   the end of the query interval
+   * @return true if the interval of any value overlaps [from, to]
+   */
+  public boolean overlapsAny(long from, long to) {
+    return firstOverlapping(from, to) != null;
+  }
+
+  /**
+   * @return the largest end of the values in the subtree rooted at node
+   */
+  private static long maxEnd(RBTNode<?> node) {
+    return (Long) node.aggregate;
+  }
+}
@@ -1,7 +1,15 @@
 package Backend.src.main.model;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.Stack;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
@@ -14,6 +22,47 @@ public class IterableRedBlackTree<T extends Comparable<T>> extends RedBlackTree<
   //class variable that holds the max value, and null if there's no max value
   private T max = null;
 
+  /**
+   * Creates an empty tree that orders its values by their natural ordering.
+   */
+  public IterableRedBlackTree() {
+    super();
+  }
+
+  /**
+   * Creates an empty tree that orders its values with the provided comparator.
+   *
+   * @param comparator the ordering for this tree, or null to use the natural ordering
+   */
+  public IterableRedBlackTree(Comparator<? super T> comparator) {
+    super(comparator);
+  }
+
+  /**
+   * Creates an empty tree that orders its values with the provided comparator and, in multiset
+   * mode, counts duplicates in the node of their value. Iterators return a counted value once per
+   * occurrence.
+   *
+   * @param comparator the ordering for this tree, or null to use the natural ordering
+   * @param multiset   whether duplicates are counted instead of stored as separate nodes
+   */
+  public IterableRedBlackTree(Comparator<? super T> comparator, boolean multiset) {
+    super(comparator, multiset);
+  }
+
+  /**
+   * Creates an empty tree that keeps the aggregate of an augmentation for every subtree, so that
+   * aggregate can compute it over any range of values in O(log n) time.
+   *
+   * @param comparator   the ordering for this tree, or null to use the natural ordering
+   * @param multiset     whether duplicates are counted instead of stored as separate nodes
+   * @param augmentation the monoid to aggregate over every subtree, or null for none
+   */
+  public IterableRedBlackTree(Comparator<? super T> comparator, boolean multiset,
+      Augmentation<? super T, ?> augmentation) {
+    super(comparator, multiset, augmentation);
+  }
+
   /**
    * Allows setting the start (minimum) value of the iterator. When this method is called, every
    * iterator created after it will use the minimum set by this method until this method is called
@@ -40,13 +89,304 @@ public class IterableRedBlackTree<T extends Comparable<T>> extends RedBlackTree<
     this.max = (T) max;
   }
 
+  @Override
+  protected IterableRedBlackTree<T> newEmptyTree() {
+    return new IterableRedBlackTree<T>(comparator, multiset, augmentation);
+  }
+
+  @Override
+  public IterableRedBlackTree<T> split(Comparable<T> key) {
+    return (IterableRedBlackTree<T>) super.split(key);
+  }
+
+  @Override
+  public IterableRedBlackTree<T> extractRange(Comparable<T> lo, Comparable<T> hi) {
+    return (IterableRedBlackTree<T>) super.extractRange(lo, hi);
+  }
+
   /**
-   * Removes all values and duplicates from the collection.
+   * Creates a tree holding values that are already in ascending order, in O(n) time: the values
+   * are linked into a balanced tree without comparisons or rotations.
+   *
+   * @param sorted the values, in ascending natural order
+   * @return a new tree holding the values
+   * @throws IllegalArgumentException if the values are not in ascending order or one is null
    */
-  @Override
-  public void clear() {
-    //clear the tree from the root
-    root = null;
+  public static <T extends Comparable<T>> IterableRedBlackTree<T> fromSorted(
+      Collection<? extends T> sorted) {
+    return fromSorted(sorted, null);
+  }
+
+  /**
+   * Creates a tree ordered by a comparator, holding values that are already in ascending order of
+   * that comparator, in O(n) time.
+   *
+   * @param sorted     the values, in ascending order of the comparator
+   * @param comparator the comparator that orders the values, or null for natural ordering
+   * @return a new tree holding the values
+   * @throws IllegalArgumentException if the values are not in ascending order or one is null
+   */
+  public static <T extends Comparable<T>> IterableRedBlackTree<T> fromSorted(
+      Collection<? extends T> sorted, Comparator<? super T> comparator) {
+    IterableRedBlackTree<T> tree = new IterableRedBlackTree<T>(comparator);
+    if (!tree.isSorted(sorted)) {
+      throw new IllegalArgumentException("Values are not in ascending order.");
+    }
+    tree.buildFromSorted(sorted.iterator(), sorted.size());
+    return tree;
+  }
+
+  /**
+   * Inserts every value of a collection. Sorted input is detected and unsorted input is sorted
+   * first. An empty tree is then built in O(n) time. Otherwise the k new values are inserted one
+   * by one in ascending order, each with insertNear from the node of the previous one, or, once
+   * the batch is at least as large as the tree, merged with the stored values into a rebuilt tree
+   * in O(n + k) time.
+   *
+   * @param values the values to insert
+   * @throws IllegalArgumentException if one of the values is null
+   */
+  public void insertAll(Collection<? extends T> values) {
+    if (values.isEmpty()) {
+      return;
+    }
+    Collection<? extends T> sorted = values;
+    if (!isSorted(values)) {
+      List<T> copy = new ArrayList<>(values);
+      copy.sort(comparator);
+      sorted = copy;
+    }
+    int stored = size();
+    int total = stored + sorted.size();
+    if (stored == 0) {
+      buildFromSorted(sorted.iterator(), total);
+    } else if (sorted.size() >= stored) {
+      // the new nodes are built before the root is replaced, so the old nodes can be read
+      buildFromSorted(merge(iterator(null, null), sorted.iterator()), total);
+    } else {
+      RBTNode<T> hint = null;
+      for (T value : sorted) {
+        hint = insertNear(value, hint);
+      }
+      // the batch leaves the tree with exact sizes, so reads after it don't write to the tree
+      settleSizes();
+    }
+  }
+
+  /**
+   * Checks whether the values are in ascending order of this tree.
+   *
+   * @throws IllegalArgumentException if one of the values is null
+   */
+  private boolean isSorted(Collection<? extends T> values) {
+    T previous = null;
+    boolean sorted = true;
+    for (T value : values) {
+      if (value == null) {
+        throw new IllegalArgumentException("Null values can't be inserted.");
+      }
+      if (sorted && previous != null && compareKey(previous, value) > 0) {
+        sorted = false;
+      }
+      previous = value;
+    }
+    return sorted;
+  }
+
+  /**
+   * Merges two iterators over ascending values into one, taking equal values from first before
+   * those from second.
+   */
+  private Iterator<T> merge(Iterator<? extends T> first, Iterator<? extends T> second) {
+    return new Iterator<>() {
+      private T nextFirst = first.hasNext() ? first.next() : null;
+      private T nextSecond = second.hasNext() ? second.next() : null;
+
+      @Override
+      public boolean hasNext() {
+        return nextFirst != null || nextSecond != null;
+      }
+
+      @Override
+      public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException("No more values to return.");
+        }
+        T value;
+        if (nextSecond == null || (nextFirst != null && compareKey(nextFirst, nextSecond) <= 0)) {
+          value = nextFirst;
+          nextFirst = first.hasNext() ? first.next() : null;
+        } else {
+          value = nextSecond;
+          nextSecond = second.hasNext() ? second.next() : null;
+        }
+        return value;
+      }
+    };
+  }
+
+  /**
+   * Counts the values in this tree that are strictly less than key. This walks a single path from
+   * the root, using the subtree sizes kept in the nodes, and takes O(log n) time.
+   *
+   * @param key the value to rank
+   * @return the number of values less than key
+   */
+  public int rank(Comparable<T> key) {
+    int rank = 0;
+    RBTNode<T> node = getRoot();
+    while (node != null) {
+      if (compareKey(key, node.getData()) <= 0) {
+        node = node.getLeft();
+      } else {
+        // the node and its whole left subtree are smaller than key
+        rank += sizeOf(node.getLeft()) + node.count;
+        node = node.getRight();
+      }
+    }
+    return rank;
+  }
+
+  /**
+   * Counts the values in this tree that are less than or equal to key, in O(log n) time.
+   *
+   * @param key the upper bound to count up to
+   * @return the number of values less than or equal to key
+   */
+  int countAtMost(Comparable<T> key) {
+    int count = 0;
+    RBTNode<T> node = getRoot();
+    while (node != null) {
+      if (compareKey(key, node.getData()) < 0) {
+        node = node.getLeft();
+      } else {
+        count += sizeOf(node.getLeft()) + node.count;
+        node = node.getRight();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the value at the provided position of the sorted order of this tree, where position 0
+   * holds the smallest value. Duplicates occupy one position each. This takes O(log n) time.
+   *
+   * @param index the zero-based position of the value to return
+   * @return the value at position index
+   * @throws IndexOutOfBoundsException if index is negative or not less than size()
+   */
+  public T select(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size());
+    }
+    RBTNode<T> node = getRoot();
+    while (true) {
+      int leftSize = sizeOf(node.getLeft());
+      if (index < leftSize) {
+        node = node.getLeft();
+      } else if (index < leftSize + node.count) {
+        return node.getData();
+      } else {
+        index -= leftSize + node.count;
+        node = node.getRight();
+      }
+    }
+  }
+
+  /**
+   * Counts the values in this tree that lie between lo and hi, both inclusive, in O(log n) time.
+   *
+   * @param lo the smallest value to count
+   * @param hi the largest value to count
+   * @return the number of values v with lo <= v <= hi, or 0 when hi is less than lo
+   */
+  public int countInRange(Comparable<T> lo, Comparable<T> hi) {
+    return Math.max(0, countAtMost(hi) - rank(lo));
+  }
+
+  /**
+   * Aggregates the values of this tree that lie between lo and hi, both inclusive, in O(log n)
+   * time. The search descends to the highest node inside the range, and from there combines the
+   * stored aggregates of the subtrees that lie completely inside the range along the paths to lo
+   * and to hi, so no value is visited one by one.
+   *
+   * @param augmentation the augmentation this tree was created with
+   * @param lo           the smallest value to aggregate, or null for no lower bound
+   * @param hi           the largest value to aggregate, or null for no upper bound
+   * @return the aggregate of the values v with lo <= v <= hi, which is the identity when there are
+   *         none
+   * @throws IllegalArgumentException if the tree does not keep aggregates of augmentation
+   */
+  public <A> A aggregate(Augmentation<? super T, A> augmentation, Comparable<T> lo,
+      Comparable<T> hi) {
+    if (augmentation == null || augmentation != this.augmentation) {
+      throw new IllegalArgumentException("The tree does not keep this augmentation.");
+    }
+    RBTNode<T> node = getRoot();
+    while (node != null) {
+      if (lo != null && compareKey(lo, node.data) > 0) {
+        node = node.getRight();
+      } else if (hi != null && compareKey(hi, node.data) < 0) {
+        node = node.getLeft();
+      } else {
+        break;
+      }
+    }
+    if (node == null) {
+      return augmentation.identity();
+    }
+    // node lies in the range, so the range covers the values >= lo on its left and the values
+    // <= hi on its right
+    A result = augmentation.of(node.data, node.count);
+    for (RBTNode<T> left = node.getLeft(); left != null; ) {
+      if (lo == null || compareKey(lo, left.data) <= 0) {
+        result = augmentation.combine(aggregateOf(augmentation, left.getRight()), result);
+        result = augmentation.combine(augmentation.of(left.data, left.count), result);
+        left = left.getLeft();
+      } else {
+        left = left.getRight();
+      }
+    }
+    for (RBTNode<T> right = node.getRight(); right != null; ) {
+      if (hi == null || compareKey(hi, right.data) >= 0) {
+        result = augmentation.combine(result, aggregateOf(augmentation, right.getLeft()));
+        result = augmentation.combine(result, augmentation.of(right.data, right.count));
+        right = right.getRight();
+      } else {
+        right = right.getLeft();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the aggregate stored in node, or the identity if node is null
+   */
+  @SuppressWarnings("unchecked")
+  private static <R, A> A aggregateOf(Augmentation<? super R, A> augmentation, RBTNode<R> node) {
+    return node == null ? augmentation.identity() : (A) node.aggregate;
+  }
+
+  /**
+   * Returns the value at the provided percentile of this tree using the nearest-rank method, so
+   * percentile(50) is the (lower) median and percentile(100) is the largest value. This takes
+   * O(log n) time.
+   *
+   * @param p the percentile to look up, between 0 and 100
+   * @return the smallest value that is greater than or equal to p percent of the values
+   * @throws IllegalArgumentException if p is not between 0 and 100
+   * @throws NoSuchElementException if the tree is empty
+   */
+  public T percentile(double p) {
+    if (!(p >= 0.0 && p <= 100.0)) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100: " + p);
+    }
+    int size = size();
+    if (size == 0) {
+      throw new NoSuchElementException("No percentile of an empty tree.");
+    }
+    int index = (int) Math.ceil(p / 100.0 * size) - 1;
+    return select(Math.max(0, Math.min(index, size - 1)));
   }
 
   /**
@@ -59,23 +399,355 @@ public class IterableRedBlackTree<T extends Comparable<T>> extends RedBlackTree<
    * exists in the tree.
    */
   @Override
-  public Iterator iterator() {
+  public Iterator<T> iterator() {
     //Runs the private class iterator
-    return new RBTIterator((RBTNode<T>) root, min, max);
+    return new RBTIterator<>(root, min, max, comparator);
+  }
+
+  /**
+   * Returns an iterator over the values from min to max, both inclusive, ignoring the bounds set
+   * through setIteratorMin and setIteratorMax.
+   *
+   * @param min the minimum value to return, or null for no minimum
+   * @param max the maximum value to return, or null for no maximum
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    return new RBTIterator<>(root, min, max, comparator);
+  }
+
+  /**
+   * Returns the values from min to max like iterator(min, max) does, for a reader that may run
+   * while another thread changes the tree. Every node the walk visits is reported to budget, which
+   * ends a walk that a concurrent rotation has sent around a cycle.
+   *
+   * @param min    the minimum value to return, or null for no minimum
+   * @param max    the maximum value to return, or null for no maximum
+   * @param limit  the largest number of values to return
+   * @param budget the bound on the work of this read
+   * @return up to limit values in ascending order, with every occurrence of a duplicate
+   * @throws ConcurrentModificationException if the walk visits more nodes, or goes deeper, than
+   *                                         the budget allows
+   */
+  public List<T> range(Comparable<T> min, Comparable<T> max, int limit, TraversalBudget budget) {
+    List<T> values = new ArrayList<>();
+    collectRange((RBTNode<T>) root, min, max, limit, values, 0, budget);
+    return values;
+  }
+
+  private void collectRange(RBTNode<T> node, Comparable<T> min, Comparable<T> max, int limit,
+      List<T> values, int depth, TraversalBudget budget) {
+    if (node == null || values.size() >= limit) {
+      return;
+    }
+    budget.visit(depth);
+    boolean atLeastMin = min == null || compareKey(min, node.data) <= 0;
+    boolean atMostMax = max == null || compareKey(max, node.data) >= 0;
+    if (atLeastMin) {
+      collectRange(node.getLeft(), min, max, limit, values, depth + 1, budget);
+    }
+    for (int i = 0; atLeastMin && atMostMax && i < node.count && values.size() < limit; i++) {
+      values.add(node.data);
+    }
+    if (atMostMax) {
+      collectRange(node.getRight(), min, max, limit, values, depth + 1, budget);
+    }
   }
 
   /**
-   * Nested class for Iterator objects created for this tree and returned by the iterator method.
-   * This iterator follows an in-order traversal of the tree and returns the values in sorted,
-   * ascending order.
+   * @return the smallest value of this tree
+   * @throws NoSuchElementException if the tree is empty
+   */
+  public T first() {
+    if (root == null) {
+      throw new NoSuchElementException("The tree is empty.");
+    }
+    return minimum(root).data;
+  }
+
+  /**
+   * @return the largest value of this tree
+   * @throws NoSuchElementException if the tree is empty
+   */
+  public T last() {
+    if (root == null) {
+      throw new NoSuchElementException("The tree is empty.");
+    }
+    return maximum(root).data;
+  }
+
+  /**
+   * Finds the largest value that is less than or equal to key, in O(log n) time.
+   *
+   * @param key the value to look up
+   * @return the largest value at most key, or null if there is none
+   * @throws NullPointerException if key is null
+   */
+  public T floor(Comparable<T> key) {
+    return dataOf(floorNode(root, requireKey(key), true, comparator));
+  }
+
+  /**
+   * Finds the smallest value that is greater than or equal to key, in O(log n) time.
+   *
+   * @param key the value to look up
+   * @return the smallest value at least key, or null if there is none
+   * @throws NullPointerException if key is null
+   */
+  public T ceiling(Comparable<T> key) {
+    return dataOf(ceilingNode(root, requireKey(key), true, comparator));
+  }
+
+  /**
+   * Finds the smallest value that is strictly greater than key, in O(log n) time.
+   *
+   * @param key the value to look up
+   * @return the smallest value greater than key, or null if there is none
+   * @throws NullPointerException if key is null
+   */
+  public T higher(Comparable<T> key) {
+    return dataOf(ceilingNode(root, requireKey(key), false, comparator));
+  }
+
+  /**
+   * Finds the largest value that is strictly less than key, in O(log n) time.
+   *
+   * @param key the value to look up
+   * @return the largest value less than key, or null if there is none
+   * @throws NullPointerException if key is null
+   */
+  public T lower(Comparable<T> key) {
+    return dataOf(floorNode(root, requireKey(key), false, comparator));
+  }
+
+  /**
+   * Removes and returns one occurrence of the smallest value, in O(log n) time, so that the tree
+   * can serve as a priority queue.
+   *
+   * @return the smallest value, or null if the tree is empty
+   */
+  public T pollFirst() {
+    return root == null ? null : poll((RBTNode<T>) minimum(root));
+  }
+
+  /**
+   * Removes and returns one occurrence of the largest value, in O(log n) time.
+   *
+   * @return the largest value, or null if the tree is empty
+   */
+  public T pollLast() {
+    return root == null ? null : poll((RBTNode<T>) maximum(root));
+  }
+
+  /**
+   * Removes one occurrence of the value of a node of this tree.
+   *
+   * @return the value of node
+   */
+  private T poll(RBTNode<T> node) {
+    if (node.count > 1) {
+      addCount(node, -1);
+    } else {
+      removeNode(node);
+    }
+    return node.data;
+  }
+
+  /**
+   * Returns a read-only view of the values from from to to. The view keeps its own bounds, so
+   * any number of views with different ranges can be read at the same time, and it reflects
+   * later changes to the tree.
+   *
+   * @param from          the lower bound of the view
+   * @param fromInclusive whether values equal to from are part of the view
+   * @param to            the upper bound of the view
+   * @param toInclusive   whether values equal to to are part of the view
+   * @return a view of the values between the bounds, which is empty if from is greater than to
+   * @throws NullPointerException if from or to is null
+   */
+  public TreeRangeView<T> subSet(Comparable<T> from, boolean fromInclusive, Comparable<T> to,
+      boolean toInclusive) {
+    return new TreeRangeView<>(this, requireKey(from), fromInclusive, requireKey(to),
+        toInclusive);
+  }
+
+  /**
+   * Returns a read-only view of the values less than (or equal to, if inclusive is true) to.
+   *
+   * @throws NullPointerException if to is null
+   */
+  public TreeRangeView<T> headSet(Comparable<T> to, boolean inclusive) {
+    return new TreeRangeView<>(this, null, false, requireKey(to), inclusive);
+  }
+
+  /**
+   * Returns a read-only view of the values greater than (or equal to, if inclusive is true) from.
+   *
+   * @throws NullPointerException if from is null
+   */
+  public TreeRangeView<T> tailSet(Comparable<T> from, boolean inclusive) {
+    return new TreeRangeView<>(this, requireKey(from), inclusive, null, false);
+  }
+
+  private static <R> Comparable<R> requireKey(Comparable<R> key) {
+    if (key == null) {
+      throw new NullPointerException("The key can't be null.");
+    }
+    return key;
+  }
+
+  /**
+   * @return the value of node, or null if node is null
+   */
+  static <R> R dataOf(BSTNode<R> node) {
+    return node == null ? null : node.data;
+  }
+
+  /**
+   * Returns a spliterator over the values between the bounds set through setIteratorMin and
+   * setIteratorMax, in ascending order. It knows its exact size and splits into halves of exactly
+   * known sizes, so parallel streams divide the range evenly between their threads.
+   */
+  @Override
+  public Spliterator<T> spliterator() {
+    return spliterator(min, max);
+  }
+
+  /**
+   * Returns a spliterator over the values from min to max, both inclusive, ignoring the bounds set
+   * through setIteratorMin and setIteratorMax.
+   *
+   * @param min the minimum value to return, or null for no minimum
+   * @param max the maximum value to return, or null for no maximum
+   */
+  public Spliterator<T> spliterator(Comparable<T> min, Comparable<T> max) {
+    int start = min == null ? 0 : rank(min);
+    int end = max == null ? size() : countAtMost(max);
+    return new RBTSpliterator<>(getRoot(), start, Math.max(start, end), comparator);
+  }
+
+  /**
+   * @return a sequential stream over the values between the bounds set through setIteratorMin
+   *         and setIteratorMax, in ascending order
+   */
+  public Stream<T> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  /**
+   * @return a parallel stream over the values between the bounds set through setIteratorMin and
+   *         setIteratorMax, which are processed by the threads of the common ForkJoinPool
+   */
+  public Stream<T> parallelStream() {
+    return StreamSupport.stream(spliterator(), true);
+  }
+
+  /**
+   * Returns an iterator over the values from max down to min, both inclusive, in descending
+   * order.
+   *
+   * @param max the largest value to return, or null to start with the largest value of the tree
+   * @param min the smallest value to return, or null for no minimum
+   */
+  public Iterator<T> descendingIterator(Comparable<T> max, Comparable<T> min) {
+    return new RBTIterator<>(floorNode(root, max, true, comparator),
+        ceilingNode(root, min, true, comparator), true, comparator);
+  }
+
+  /**
+   * Returns an iterator that resumes a scan after key: it starts with the first value strictly
+   * after key in the provided direction and runs to the end of the tree. A paginated scan keeps
+   * the last value it returned and passes it here to continue, even when the tree was changed in
+   * between. Finding the start takes O(log n) time.
+   *
+   * @param key        the last value returned by the previous part of the scan, or null to start
+   *                   at the beginning
+   * @param descending whether to continue in descending instead of ascending order
+   */
+  public Iterator<T> iteratorAfter(Comparable<T> key, boolean descending) {
+    if (descending) {
+      return new RBTIterator<>(floorNode(root, key, key == null, comparator),
+          ceilingNode(root, null, true, comparator), true, comparator);
+    }
+    return new RBTIterator<>(ceilingNode(root, key, key == null, comparator),
+        floorNode(root, null, true, comparator), false, comparator);
+  }
+
+  /**
+   * Finds the left-most node whose value is at least key, or strictly greater than key when
+   * inclusive is false, in O(log n) time.
+   *
+   * @param root       the root of the tree to search
+   * @param key        the bound, or null to find the left-most node of the tree
+   * @param inclusive  whether a node equal to key qualifies
+   * @param comparator the ordering of the tree, or null for the natural ordering
+   * @return the node, or null if no value of the tree qualifies
+   */
+  protected static <R> BSTNode<R> ceilingNode(BSTNode<R> root, Comparable<R> key,
+      boolean inclusive, Comparator<? super R> comparator) {
+    BSTNode<R> found = null;
+    for (BSTNode<R> node = root; node != null; ) {
+      int c = key == null ? -1 : compareToBound(key, node.data, comparator);
+      if (c < 0 || c == 0 && inclusive) {
+        found = node;
+        node = node.left;
+      } else {
+        node = node.right;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Finds the right-most node whose value is at most key, or strictly less than key when
+   * inclusive is false, in O(log n) time.
+   *
+   * @param root       the root of the tree to search
+   * @param key        the bound, or null to find the right-most node of the tree
+   * @param inclusive  whether a node equal to key qualifies
+   * @param comparator the ordering of the tree, or null for the natural ordering
+   * @return the node, or null if no value of the tree qualifies
+   */
+  protected static <R> BSTNode<R> floorNode(BSTNode<R> root, Comparable<R> key,
+      boolean inclusive, Comparator<? super R> comparator) {
+    BSTNode<R> found = null;
+    for (BSTNode<R> node = root; node != null; ) {
+      int c = key == null ? 1 : compareToBound(key, node.data, comparator);
+      if (c > 0 || c == 0 && inclusive) {
+        found = node;
+        node = node.right;
+      } else {
+        node = node.left;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Compares a bound against a stored value using the tree's ordering.
+   */
+  @SuppressWarnings("unchecked")
+  private static <R> int compareToBound(Comparable<R> bound, R data,
+      Comparator<? super R> comparator) {
+    return comparator == null ? bound.compareTo(data) : comparator.compare((R) bound, data);
+  }
+
+  /**
+   * Nested class for Iterator objects created for this tree and returned by the iterator methods.
+   * The iterator walks from the node holding its first value to the node holding its last value,
+   * both found when it is created, moving to the in-order successor (or predecessor) through the
+   * parent references of the nodes. It needs no stack and no comparisons while it runs, and never
+   * allocates after it was created.
    */
   protected static class RBTIterator<R> implements Iterator<R> {
-    // stores the start point (minimum) for the iterator
-    Comparable<R> min = null;
-    // stores the stop point (maximum) for the iterator
-    Comparable<R> max = null;
-    // stores the stack that keeps track of the inorder traversal
-    Stack<BSTNode<R>> stack = null;
+    // the node holding the next value to return, or null when every value was returned
+    private BSTNode<R> nextNode;
+    // the node holding the last value to return
+    private final BSTNode<R> last;
+    // whether the iterator moves to predecessors instead of successors
+    private final boolean descending;
+    // how many occurrences of the value in next have been returned already
+    private int returned = 0;
 
     /**
      * Constructor for a new iterator if the tree with root as its root node, and min as the start
@@ -87,61 +759,50 @@ public class IterableRedBlackTree<T extends Comparable<T>> extends RedBlackTree<
      * @param max  the maximum value that the iterator will return
      */
     public RBTIterator(BSTNode<R> root, Comparable<R> min, Comparable<R> max) {
-      //set the min to the constructor min, set max to the constructor max, stack is set to constructor stack
-      this.min = min;
-      this.max = max;
-      this.stack = new Stack<>();
-      //initialize and update stack
-      buildStackHelper(root);
+      this(root, min, max, null);
     }
 
     /**
-     * Helper method for initializing and updating the stack. This method both - finds the next data
-     * value stored in the tree (or subtree) that is bigger than or equal to the specified start
-     * point (maximum), and - builds up the stack of ancestor nodes that contain values larger than
-     * or equal to the start point so that those nodes can be visited in the future.
+     * Constructor for a new iterator over a tree that is ordered by the provided comparator.
      *
-     * @param node the root node of the subtree to process
+     * @param root       root node of the tree to traverse
+     * @param min        the minimum value that the iterator will return
+     * @param max        the maximum value that the iterator will return
+     * @param comparator the ordering of the tree, or null for the natural ordering
      */
-    private void buildStackHelper(BSTNode<R> node) {
-      //If the node is null, the method should return
-      if (node == null) {
-        return;
-      }
-      //The data in the node is cast and saved as a Comparable
-      Comparable<R> nodeData = (Comparable<R>) node.getData();
-      //as long as the min value is not null and the node data is greater than the min value
-      if (min != null && nodeData.compareTo((R) min) < 0) {
-        //Recursively call the method on the right node of the current node
-        buildStackHelper(node.getRight());
-      } else {
-        //Push the node in the stack
-        stack.push(node);
-        //Recursively call the method on the left node of the current node
-        buildStackHelper(node.getLeft());
+    public RBTIterator(BSTNode<R> root, Comparable<R> min, Comparable<R> max,
+        Comparator<? super R> comparator) {
+      this(ceilingNode(root, min, true, comparator), floorNode(root, max, true, comparator), false,
+          comparator);
+    }
+
+    /**
+     * Constructor for a new iterator from the node first to the node last, both inclusive.
+     *
+     * @param first      the node holding the first value to return, or null for no values
+     * @param last       the node holding the last value to return, or null for no values
+     * @param descending whether last comes before first in the order of the tree
+     * @param comparator the ordering of the tree, or null for the natural ordering
+     */
+    @SuppressWarnings("unchecked")
+    public RBTIterator(BSTNode<R> first, BSTNode<R> last, boolean descending,
+        Comparator<? super R> comparator) {
+      this.last = last;
+      this.descending = descending;
+      // the bounds cross when no value of the tree lies between them
+      boolean empty = first == null || last == null;
+      if (!empty) {
+        int c = compareToBound((Comparable<R>) first.data, last.data, comparator);
+        empty = descending ? c < 0 : c > 0;
       }
+      this.nextNode = empty ? null : first;
     }
 
     /**
      * Returns true if the iterator has another value to return, and false otherwise.
      */
     public boolean hasNext() {
-      //as long as the stack isn't empty, check the iterator values
-      while (!stack.isEmpty()) {
-        //Make a new BST node that takes in the first val in the stack
-        BSTNode<R> first = (RBTNode<R>) stack.peek();
-        //Cast and save this node value as a Comparable val in order to compare the data
-        Comparable<R> currentData = (Comparable<R>) first.getData();
-
-        // Compare the current data with the max bound or if no bound, if it falls in line, return true
-        if (max == null || currentData.compareTo((R) max) <= 0) {
-          return true;
-        } else {
-          // If the data is greater than max, pop the node from the stack and continue
-          stack.pop();
-        }
-      }
-      return false;
+      return nextNode != null;
     }
 
     /**
@@ -150,25 +811,176 @@ public class IterableRedBlackTree<T extends Comparable<T>> extends RedBlackTree<
      * @throws NoSuchElementException if the iterator has no more values to return
      */
     public R next() {
-      //Checks to see if there's other values next
-      if (!hasNext()) {
+      BSTNode<R> node = nextNode;
+      if (node == null) {
         throw new NoSuchElementException("No more values to return.");
       }
-      //Make new BST node that's assigned to the first element in stack
-      BSTNode<R> nextNode = stack.pop();
-      //Make a new R val that contains the data of the new BST Node
-      R finalVal = nextNode.getData();
-      //If the right val isn't null, build the stack using the right val
-      if (nextNode.getRight() != null) {
-        buildStackHelper(nextNode.getRight());
+      //A node that counts several occurrences of its value is returned once per occurrence
+      if (node instanceof RBTNode<R> counted && ++returned < counted.count) {
+        return node.data;
+      }
+      returned = 0;
+      nextNode = node == last ? null : descending ? predecessor(node) : successor(node);
+      return node.data;
+    }
+
+    /**
+     * @return the node that follows node in the order of the tree, or null if it is the last one
+     */
+    static <R> BSTNode<R> successor(BSTNode<R> node) {
+      if (node.right != null) {
+        node = node.right;
+        while (node.left != null) {
+          node = node.left;
+        }
+        return node;
+      }
+      // climb until node is reached from a left child
+      BSTNode<R> parent = node.up;
+      while (parent != null && node == parent.right) {
+        node = parent;
+        parent = parent.up;
       }
-      //Return the data of the next val
-      return finalVal;
+      return parent;
+    }
+
+    /**
+     * @return the node that precedes node in the order of the tree, or null if it is the first one
+     */
+    private static <R> BSTNode<R> predecessor(BSTNode<R> node) {
+      if (node.left != null) {
+        node = node.left;
+        while (node.right != null) {
+          node = node.right;
+        }
+        return node;
+      }
+      // climb until node is reached from a right child
+      BSTNode<R> parent = node.up;
+      while (parent != null && node == parent.left) {
+        node = parent;
+        parent = parent.up;
+      }
+      return parent;
     }
 
   }
 
-}
+  /**
+   * Spliterator over the values of a tree whose positions in the sorted order lie in a range.
+   * Splitting halves the range of positions, and a spliterator finds the node holding its first
+   * value by descending from the root with the subtree sizes only when it starts running. From
+   * there it moves through the in-order successors like RBTIterator. The values are ordered and
+   * sorted, but not reported as distinct, since the tree may hold duplicates.
+   */
+  protected static class RBTSpliterator<R> implements Spliterator<R> {
+    // ranges smaller than this are not split, since positioning costs O(log n) per part
+    private static final int MIN_SPLIT_SIZE = 1 << 10;
+
+    private final RBTNode<R> root;
+    private final Comparator<? super R> comparator;
+    // the position of the next value, and the position after the last value
+    private int index;
+    private final int end;
+    // the node holding the value at index once the spliterator started, and how many occurrences
+    // of its value were returned already
+    private RBTNode<R> node = null;
+    private int returned = 0;
+
+    /**
+     * @param root       root node of the tree to traverse
+     * @param start      the position of the first value to return
+     * @param end        the position after the last value to return
+     * @param comparator the ordering of the tree, or null for the natural ordering
+     */
+    public RBTSpliterator(RBTNode<R> root, int start, int end, Comparator<? super R> comparator) {
+      this.root = root;
+      this.index = start;
+      this.end = end;
+      this.comparator = comparator;
+    }
 
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+      if (index >= end) {
+        return false;
+      }
+      action.accept(step());
+      return true;
+    }
 
+    @Override
+    public void forEachRemaining(Consumer<? super R> action) {
+      while (index < end) {
+        action.accept(step());
+      }
+    }
 
+    /**
+     * Returns the value at index and moves to the next position.
+     */
+    private R step() {
+      if (node == null) {
+        position();
+      }
+      R value = node.data;
+      index++;
+      if (++returned == node.count) {
+        returned = 0;
+        node = index < end ? (RBTNode<R>) RBTIterator.successor(node) : null;
+      }
+      return value;
+    }
+
+    /**
+     * Finds the node holding the value at index, in O(log n) time.
+     */
+    private void position() {
+      RBTNode<R> current = root;
+      int offset = index;
+      while (true) {
+        int leftSize = sizeOf(current.getLeft());
+        if (offset < leftSize) {
+          current = current.getLeft();
+        } else if (offset < leftSize + current.count) {
+          node = current;
+          returned = offset - leftSize;
+          return;
+        } else {
+          offset -= leftSize + current.count;
+          current = current.getRight();
+        }
+      }
+    }
+
+    @Override
+    public Spliterator<R> trySplit() {
+      if (end - index < 2 * MIN_SPLIT_SIZE) {
+        return null;
+      }
+      // the first half is handed out and this spliterator continues with the second half
+      int middle = (index + end) >>> 1;
+      RBTSpliterator<R> prefix = new RBTSpliterator<>(root, index, middle, comparator);
+      index = middle;
+      node = null;
+      returned = 0;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | SORTED | SIZED | SUBSIZED | NONNULL;
+    }
+
+    @Override
+    public Comparator<? super R> getComparator() {
+      return comparator;
+    }
+  }
+
+}
@@ -1,4 +1,7 @@
 package Backend.src.main.model;
+
+import java.util.Iterator;
+
 /**
  * This interface defines an ADT for data structures that support storing a 
  * collection of comparable values in their natural ordering (similar to the
@@ -9,5 +12,11 @@ public interface IterableSortedCollection<T extends Comparable<T>> extends Sorte
   public void setIteratorMin(Comparable<T> min); // null to clear min
   public void setIteratorMax(Comparable<T> max); // null to clear max
 
+  /**
+   * Returns an iterator over the values from min to max (both inclusive, null for no bound)
+   * without changing the bounds set through setIteratorMin and setIteratorMax, so that readers
+   * sharing the collection don't share iterator bounds.
+   */
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max);
 
 }
@@ -0,0 +1,197 @@
+package Backend.src.main.model;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * This class is a red-black tree of long values that stores its nodes in parallel primitive arrays
+ * rather than as RBTNode objects, so a value costs about 20 bytes instead of a node object plus a
+ * boxed Long. The long methods never box; the methods inherited from IterableSortedCollection
+ * accept and return Long objects and delegate to them.
+ */
+public class LongRedBlackTree extends PrimitiveRedBlackTree<Long> {
+
+  // the key of every node, indexed like the link arrays
+  private long[] keys;
+
+  /**
+   * Creates an empty tree with a small default capacity.
+   */
+  public LongRedBlackTree() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty tree with room for the provided number of values before its arrays grow.
+   *
+   * @param initialCapacity the number of values the tree can hold before growing
+   */
+  public LongRedBlackTree(int initialCapacity) {
+    super(initialCapacity);
+  }
+
+  @Override
+  protected void resizeKeys(int capacity) {
+    keys = keys == null ? new long[capacity] : Arrays.copyOf(keys, capacity);
+  }
+
+  @Override
+  protected int compareKey(Comparable<Long> key, int node) {
+    if (key instanceof Long) {
+      return Long.compare((Long) key, keys[node]);
+    }
+    return key.compareTo(keys[node]);
+  }
+
+  @Override
+  protected Long keyAt(int node) {
+    return keys[node];
+  }
+
+  /**
+   * Inserts a new value into the tree. Equal values are placed to the left of each other, so
+   * duplicates are kept.
+   *
+   * @param key the new value being inserted
+   */
+  public void insert(long key) {
+    int up = NIL;
+    int node = root;
+    boolean leftSide = false;
+    while (node != NIL) {
+      up = node;
+      leftSide = key <= keys[node];
+      node = leftSide ? left[node] : right[node];
+    }
+    node = allocate();
+    keys[node] = key;
+    attach(node, up, leftSide);
+  }
+
+  /**
+   * Inserts a new value into the tree.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException if data argument is null
+   */
+  @Override
+  public void insert(Long data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Null values can't be inserted.");
+    }
+    insert(data.longValue());
+  }
+
+  /**
+   * @return the index of a node holding key, or NIL if there is none
+   */
+  private int find(long key) {
+    int node = root;
+    while (node != NIL) {
+      long k = keys[node];
+      if (key == k) {
+        return node;
+      }
+      node = key < k ? left[node] : right[node];
+    }
+    return NIL;
+  }
+
+  /**
+   * @param key the value to check for
+   * @return true if the tree contains key one or more times, and false otherwise
+   */
+  public boolean contains(long key) {
+    return find(key) != NIL;
+  }
+
+  /**
+   * Removes a single occurrence of key from the tree.
+   *
+   * @param key the value being removed
+   * @return true if one occurrence of key was removed, and false otherwise
+   */
+  public boolean remove(long key) {
+    int node = find(key);
+    if (node == NIL) {
+      return false;
+    }
+    removeNode(node);
+    return true;
+  }
+
+  /**
+   * Removes every occurrence of key from the tree.
+   *
+   * @param key the value being removed
+   * @return the number of values that were removed
+   */
+  public int removeAll(long key) {
+    int removed = 0;
+    for (int node = find(key); node != NIL; node = find(key)) {
+      removeNode(node);
+      removed++;
+    }
+    return removed;
+  }
+
+  @Override
+  public boolean remove(Long data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Null values can't be removed.");
+    }
+    return remove(data.longValue());
+  }
+
+  @Override
+  public int removeAll(Long data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Null values can't be removed.");
+    }
+    return removeAll(data.longValue());
+  }
+
+  /**
+   * Returns an iterator over the values in ascending order, limited by the minimum and maximum set
+   * through setIteratorMin and setIteratorMax. The iterator follows the parent links, so it
+   * allocates nothing while it runs, and nextLong() returns values without boxing them.
+   */
+  @Override
+  public PrimitiveIterator.OfLong iterator() {
+    return iterator(iteratorMin, iteratorMax);
+  }
+
+  /**
+   * Returns an iterator over the values from min to max, both inclusive, ignoring the bounds set
+   * through setIteratorMin and setIteratorMax.
+   *
+   * @param min the minimum value to return, or null for no minimum
+   * @param max the maximum value to return, or null for no maximum
+   */
+  @Override
+  public PrimitiveIterator.OfLong iterator(Comparable<Long> min, Comparable<Long> max) {
+    long range = iteratorRange(min, max);
+    int first = (int) range;
+    int last = (int) (range >>> 32);
+    return new PrimitiveIterator.OfLong() {
+      // index of the node returned by the next call, or NIL when the iterator is finished
+      private int next = first;
+
+      @Override
+      public boolean hasNext() {
+        return next != NIL;
+      }
+
+      @Override
+      public long nextLong() {
+        if (next == NIL) {
+          throw new NoSuchElementException("No more values to return.");
+        }
+        int node = next;
+        next = node == last ? NIL : successor(node);
+        return keys[node];
+      }
+    };
+  }
+
+}
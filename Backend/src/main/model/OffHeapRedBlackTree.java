@@ -0,0 +1,742 @@
+package Backend.src.main.model;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class is a red-black tree of String values whose nodes and keys live outside the Java heap,
+ * in MemorySegments allocated from shared arenas. Each node is a fixed 32 byte record:
+ *
+ * <pre>
+ *   0  int  left child slot      16 long offset of the key in the key segment (in chars)
+ *   4  int  right child slot     24 int  length of the key (in chars)
+ *   8  int  parent slot          28 int  unused
+ *  12  int  flags (red, free)
+ * </pre>
+ *
+ * Keys are stored as UTF-16 chars in a separate, append-only key segment, so comparing a String
+ * against a stored key matches String.compareTo exactly without decoding the key. Slot 0 is a black
+ * sentinel standing for every missing child, and removed slots are reused through a free list.
+ * The heap footprint of the tree stays constant no matter how many values it holds. Memory is
+ * released deterministically by clear() and close(); the tree must not be used after close().
+ */
+public class OffHeapRedBlackTree implements IterableSortedCollection<String>, AutoCloseable {
+
+  // layout of a node record
+  private static final long NODE_BYTES = 32;
+  private static final long LEFT = 0;
+  private static final long RIGHT = 4;
+  private static final long PARENT = 8;
+  private static final long FLAGS = 12;
+  private static final long KEY_OFFSET = 16;
+  private static final long KEY_LENGTH = 24;
+  private static final int RED = 1;
+  private static final int FREE = 2;
+
+  // slot of the sentinel node that stands for every missing child
+  private static final int NIL = 0;
+  // number of node slots and key chars a new tree starts with
+  private static final int INITIAL_NODES = 1024;
+  private static final long INITIAL_KEY_CHARS = 16 * 1024;
+
+  private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT;
+  private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG;
+  private static final ValueLayout.OfChar CHAR = ValueLayout.JAVA_CHAR;
+
+  // arena and segment holding the node records
+  private Arena nodeArena;
+  private MemorySegment nodes;
+  // arena and segment holding the key chars
+  private Arena keyArena;
+  private MemorySegment keys;
+
+  // number of node slots in the node segment, and the first slot that was never used
+  private int nodeCapacity;
+  private int nextUnused;
+  // first slot of the free list, which is chained through the left field
+  private int freeList;
+  // number of chars in the key segment, the first unused char, and chars of removed keys
+  private long keyCapacity;
+  private long keyEnd;
+  private long deadKeyChars;
+
+  // slot of the root node, or NIL when the tree is empty
+  private int root;
+  // number of values stored in the tree
+  private int size;
+
+  // the minimum and maximum for iterators created for this tree, or null for no bound
+  private Comparable<String> iteratorMin = null;
+  private Comparable<String> iteratorMax = null;
+
+  /**
+   * Creates an empty off-heap tree.
+   */
+  public OffHeapRedBlackTree() {
+    allocate(INITIAL_NODES, INITIAL_KEY_CHARS);
+  }
+
+  /**
+   * Allocates fresh, empty node and key segments.
+   */
+  private void allocate(int nodeSlots, long keyChars) {
+    nodeArena = Arena.ofShared();
+    nodes = nodeArena.allocate(nodeSlots * NODE_BYTES, 8);
+    keyArena = Arena.ofShared();
+    keys = keyArena.allocate(keyChars * 2, 2);
+    nodeCapacity = nodeSlots;
+    keyCapacity = keyChars;
+    nextUnused = 1;
+    freeList = NIL;
+    keyEnd = 0;
+    deadKeyChars = 0;
+    root = NIL;
+    size = 0;
+  }
+
+  /**
+   * Frees the off-heap memory held by both segments.
+   */
+  private void free() {
+    if (nodeArena != null) {
+      nodeArena.close();
+      keyArena.close();
+      nodeArena = null;
+      keyArena = null;
+    }
+  }
+
+  // ---- node field accessors ----
+
+  private int left(int node) {
+    return nodes.get(INT, node * NODE_BYTES + LEFT);
+  }
+
+  private int right(int node) {
+    return nodes.get(INT, node * NODE_BYTES + RIGHT);
+  }
+
+  private int parent(int node) {
+    return nodes.get(INT, node * NODE_BYTES + PARENT);
+  }
+
+  private void setLeft(int node, int child) {
+    nodes.set(INT, node * NODE_BYTES + LEFT, child);
+  }
+
+  private void setRight(int node, int child) {
+    nodes.set(INT, node * NODE_BYTES + RIGHT, child);
+  }
+
+  private void setParent(int node, int up) {
+    nodes.set(INT, node * NODE_BYTES + PARENT, up);
+  }
+
+  private boolean isRed(int node) {
+    return (nodes.get(INT, node * NODE_BYTES + FLAGS) & RED) != 0;
+  }
+
+  private void setRed(int node, boolean red) {
+    nodes.set(INT, node * NODE_BYTES + FLAGS, red ? RED : 0);
+  }
+
+  private long keyOffset(int node) {
+    return nodes.get(LONG, node * NODE_BYTES + KEY_OFFSET);
+  }
+
+  private int keyLength(int node) {
+    return nodes.get(INT, node * NODE_BYTES + KEY_LENGTH);
+  }
+
+  // ---- allocation ----
+
+  /**
+   * Takes a node slot from the free list or the unused tail of the node segment, doubling the
+   * segment when it is full.
+   */
+  private int allocateNode() {
+    int node = freeList;
+    if (node != NIL) {
+      freeList = left(node);
+      return node;
+    }
+    if (nextUnused == nodeCapacity) {
+      if (nodeCapacity > Integer.MAX_VALUE / 2) {
+        throw new IllegalStateException("Tree is full.");
+      }
+      Arena arena = Arena.ofShared();
+      MemorySegment grown = arena.allocate(2L * nodeCapacity * NODE_BYTES, 8);
+      MemorySegment.copy(nodes, 0, grown, 0, nodeCapacity * NODE_BYTES);
+      nodeArena.close();
+      nodeArena = arena;
+      nodes = grown;
+      nodeCapacity *= 2;
+    }
+    return nextUnused++;
+  }
+
+  /**
+   * Copies the chars of key to the end of the key segment and records them in node. When the
+   * segment is full it is either compacted (when at least half of it belongs to removed keys) or
+   * doubled.
+   */
+  private void storeKey(int node, String key) {
+    int length = key.length();
+    if (keyEnd + length > keyCapacity) {
+      long live = keyEnd - deadKeyChars;
+      long capacity = keyCapacity;
+      while (live + length > capacity / 2) {
+        capacity *= 2;
+      }
+      rewriteKeys(capacity);
+    }
+    long offset = keyEnd;
+    for (int i = 0; i < length; i++) {
+      keys.set(CHAR, (offset + i) * 2, key.charAt(i));
+    }
+    keyEnd += length;
+    nodes.set(LONG, node * NODE_BYTES + KEY_OFFSET, offset);
+    nodes.set(INT, node * NODE_BYTES + KEY_LENGTH, length);
+  }
+
+  /**
+   * Moves the keys of every live node into a new key segment of the provided capacity, dropping
+   * the chars of removed keys, and frees the old segment.
+   */
+  private void rewriteKeys(long capacity) {
+    Arena arena = Arena.ofShared();
+    MemorySegment rewritten = arena.allocate(capacity * 2, 2);
+    long end = 0;
+    for (int node = 1; node < nextUnused; node++) {
+      if ((nodes.get(INT, node * NODE_BYTES + FLAGS) & FREE) != 0) {
+        continue;
+      }
+      int length = keyLength(node);
+      MemorySegment.copy(keys, keyOffset(node) * 2, rewritten, end * 2, length * 2L);
+      nodes.set(LONG, node * NODE_BYTES + KEY_OFFSET, end);
+      end += length;
+    }
+    keyArena.close();
+    keyArena = arena;
+    keys = rewritten;
+    keyCapacity = capacity;
+    keyEnd = end;
+    deadKeyChars = 0;
+  }
+
+  /**
+   * Returns a slot that was unlinked from the tree to the free list.
+   */
+  private void releaseNode(int node) {
+    deadKeyChars += keyLength(node);
+    nodes.set(INT, node * NODE_BYTES + FLAGS, FREE);
+    setRight(node, NIL);
+    setParent(node, NIL);
+    setLeft(node, freeList);
+    freeList = node;
+  }
+
+  // ---- comparisons ----
+
+  /**
+   * Compares a String against the key stored in node, with the same result as String.compareTo.
+   */
+  private int compare(String key, int node) {
+    long offset = keyOffset(node) * 2;
+    int length = keyLength(node);
+    int common = Math.min(key.length(), length);
+    for (int i = 0; i < common; i++) {
+      char stored = keys.get(CHAR, offset + i * 2L);
+      char c = key.charAt(i);
+      if (c != stored) {
+        return c - stored;
+      }
+    }
+    return key.length() - length;
+  }
+
+  /**
+   * Compares any key against the key stored in node, decoding the stored key only when the key
+   * is not a String.
+   */
+  private int compare(Comparable<String> key, int node) {
+    if (key instanceof String) {
+      return compare((String) key, node);
+    }
+    return key.compareTo(keyAt(node));
+  }
+
+  /**
+   * Decodes the key stored in node into a String.
+   *
+   * @param node a slot holding a node of this tree
+   * @return the key of node
+   */
+  public String keyAt(int node) {
+    long offset = keyOffset(node) * 2;
+    char[] chars = new char[keyLength(node)];
+    MemorySegment.copy(keys, CHAR, offset, chars, 0, chars.length);
+    return new String(chars);
+  }
+
+  // ---- structure accessors, used to render the tree ----
+
+  /**
+   * @return the slot of the root node, or 0 when the tree is empty
+   */
+  public int rootSlot() {
+    return root;
+  }
+
+  /**
+   * @param node a slot holding a node of this tree
+   * @return the slot of its left child, or 0 when it has none
+   */
+  public int leftSlot(int node) {
+    return left(node);
+  }
+
+  /**
+   * @param node a slot holding a node of this tree
+   * @return the slot of its right child, or 0 when it has none
+   */
+  public int rightSlot(int node) {
+    return right(node);
+  }
+
+  /**
+   * @param node a slot holding a node of this tree
+   * @return true if the node is red, false if it is black
+   */
+  public boolean isRedSlot(int node) {
+    return isRed(node);
+  }
+
+  // ---- SortedCollection ----
+
+  /**
+   * Inserts a new value into the tree. Equal values are placed to the left of each other, so
+   * duplicates are kept.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException if data argument is null
+   */
+  @Override
+  public void insert(String data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Null values can't be inserted.");
+    }
+    int up = NIL;
+    int node = root;
+    boolean leftSide = false;
+    while (node != NIL) {
+      up = node;
+      leftSide = compare(data, node) <= 0;
+      node = leftSide ? left(node) : right(node);
+    }
+    node = allocateNode();
+    storeKey(node, data);
+    setLeft(node, NIL);
+    setRight(node, NIL);
+    setParent(node, up);
+    setRed(node, true);
+    if (up == NIL) {
+      root = node;
+    } else if (leftSide) {
+      setLeft(up, node);
+    } else {
+      setRight(up, node);
+    }
+    size++;
+    ensureRedProperty(node);
+  }
+
+  /**
+   * Repairs red property violations caused by the red node, walking up the tree.
+   */
+  private void ensureRedProperty(int node) {
+    while (isRed(parent(node))) {
+      int up = parent(node);
+      int grandparent = parent(up);
+      if (up == left(grandparent)) {
+        int uncle = right(grandparent);
+        if (isRed(uncle)) {
+          setRed(up, false);
+          setRed(uncle, false);
+          setRed(grandparent, true);
+          node = grandparent;
+        } else {
+          if (node == right(up)) {
+            node = up;
+            rotateLeft(node);
+            up = parent(node);
+          }
+          setRed(up, false);
+          setRed(grandparent, true);
+          rotateRight(grandparent);
+        }
+      } else {
+        int uncle = left(grandparent);
+        if (isRed(uncle)) {
+          setRed(up, false);
+          setRed(uncle, false);
+          setRed(grandparent, true);
+          node = grandparent;
+        } else {
+          if (node == left(up)) {
+            node = up;
+            rotateRight(node);
+            up = parent(node);
+          }
+          setRed(up, false);
+          setRed(grandparent, true);
+          rotateLeft(grandparent);
+        }
+      }
+    }
+    setRed(root, false);
+  }
+
+  /**
+   * Rotates the right child of node into its position.
+   */
+  private void rotateLeft(int node) {
+    int child = right(node);
+    int grandchild = left(child);
+    setRight(node, grandchild);
+    if (grandchild != NIL) {
+      setParent(grandchild, node);
+    }
+    replaceChild(node, child);
+    setLeft(child, node);
+    setParent(node, child);
+  }
+
+  /**
+   * Rotates the left child of node into its position.
+   */
+  private void rotateRight(int node) {
+    int child = left(node);
+    int grandchild = right(child);
+    setLeft(node, grandchild);
+    if (grandchild != NIL) {
+      setParent(grandchild, node);
+    }
+    replaceChild(node, child);
+    setRight(child, node);
+    setParent(node, child);
+  }
+
+  /**
+   * Links replacement to the parent of node in node's place. The sentinel may be passed as the
+   * replacement; its parent is then set too, which the delete repair relies on.
+   */
+  private void replaceChild(int node, int replacement) {
+    int up = parent(node);
+    setParent(replacement, up);
+    if (up == NIL) {
+      root = replacement;
+    } else if (node == left(up)) {
+      setLeft(up, replacement);
+    } else {
+      setRight(up, replacement);
+    }
+  }
+
+  private int minimum(int node) {
+    for (int l = left(node); l != NIL; l = left(node)) {
+      node = l;
+    }
+    return node;
+  }
+
+  private int successor(int node) {
+    if (right(node) != NIL) {
+      return minimum(right(node));
+    }
+    int up = parent(node);
+    while (up != NIL && node == right(up)) {
+      node = up;
+      up = parent(up);
+    }
+    return up;
+  }
+
+  /**
+   * Unlinks node, repairs the red-black properties and returns its slot to the free list.
+   */
+  private void removeNode(int node) {
+    int moved = node;
+    boolean removedRed = isRed(moved);
+    int replacement;
+    if (left(node) == NIL) {
+      replacement = right(node);
+      replaceChild(node, replacement);
+    } else if (right(node) == NIL) {
+      replacement = left(node);
+      replaceChild(node, replacement);
+    } else {
+      moved = minimum(right(node));
+      removedRed = isRed(moved);
+      replacement = right(moved);
+      if (parent(moved) == node) {
+        setParent(replacement, moved);
+      } else {
+        replaceChild(moved, replacement);
+        setRight(moved, right(node));
+        setParent(right(moved), moved);
+      }
+      replaceChild(node, moved);
+      setLeft(moved, left(node));
+      setParent(left(moved), moved);
+      setRed(moved, isRed(node));
+    }
+    if (!removedRed) {
+      ensureBlackProperty(replacement);
+    }
+    // the sentinel's parent may have been written while it stood in for the replacement
+    setParent(NIL, NIL);
+    size--;
+    releaseNode(node);
+  }
+
+  /**
+   * Repairs the black height violation left by removing a black node, where node carries the
+   * extra black.
+   */
+  private void ensureBlackProperty(int node) {
+    while (node != root && !isRed(node)) {
+      int up = parent(node);
+      if (node == left(up)) {
+        int sibling = right(up);
+        if (isRed(sibling)) {
+          setRed(sibling, false);
+          setRed(up, true);
+          rotateLeft(up);
+          sibling = right(up);
+        }
+        if (!isRed(left(sibling)) && !isRed(right(sibling))) {
+          setRed(sibling, true);
+          node = up;
+        } else {
+          if (!isRed(right(sibling))) {
+            setRed(left(sibling), false);
+            setRed(sibling, true);
+            rotateRight(sibling);
+            sibling = right(up);
+          }
+          setRed(sibling, isRed(up));
+          setRed(up, false);
+          setRed(right(sibling), false);
+          rotateLeft(up);
+          node = root;
+        }
+      } else {
+        int sibling = left(up);
+        if (isRed(sibling)) {
+          setRed(sibling, false);
+          setRed(up, true);
+          rotateRight(up);
+          sibling = left(up);
+        }
+        if (!isRed(left(sibling)) && !isRed(right(sibling))) {
+          setRed(sibling, true);
+          node = up;
+        } else {
+          if (!isRed(left(sibling))) {
+            setRed(right(sibling), false);
+            setRed(sibling, true);
+            rotateLeft(sibling);
+            sibling = left(up);
+          }
+          setRed(sibling, isRed(up));
+          setRed(up, false);
+          setRed(left(sibling), false);
+          rotateRight(up);
+          node = root;
+        }
+      }
+    }
+    setRed(node, false);
+  }
+
+  /**
+   * @return the slot of a node holding a key equal to key, or NIL if there is none
+   */
+  private int findNode(Comparable<String> key) {
+    int node = root;
+    while (node != NIL) {
+      int c = compare(key, node);
+      if (c == 0) {
+        return node;
+      }
+      node = c < 0 ? left(node) : right(node);
+    }
+    return NIL;
+  }
+
+  /**
+   * Check whether data is stored in the tree.
+   *
+   * @param data the value to check for in the collection
+   * @return true if the collection contains data one or more times, and false otherwise
+   */
+  @Override
+  public boolean contains(Comparable<String> data) {
+    return findNode(data) != NIL;
+  }
+
+  /**
+   * Removes a single occurrence of data from the tree.
+   *
+   * @param data the value being removed
+   * @return true if one occurrence of data was removed, and false otherwise
+   * @throws NullPointerException if data argument is null
+   */
+  @Override
+  public boolean remove(String data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Null values can't be removed.");
+    }
+    int node = findNode(data);
+    if (node == NIL) {
+      return false;
+    }
+    removeNode(node);
+    return true;
+  }
+
+  /**
+   * Removes every occurrence of data from the tree.
+   *
+   * @param data the value being removed
+   * @return the number of values that were removed
+   * @throws NullPointerException if data argument is null
+   */
+  @Override
+  public int removeAll(String data) throws NullPointerException {
+    int removed = 0;
+    while (remove(data)) {
+      removed++;
+    }
+    return removed;
+  }
+
+  /**
+   * @return the number of values in the collection, including duplicates
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return true if the collection contains 0 values, false otherwise
+   */
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes all values from the tree. The off-heap memory of the old nodes and keys is freed
+   * immediately, and the tree starts over with small segments.
+   */
+  @Override
+  public void clear() {
+    free();
+    allocate(INITIAL_NODES, INITIAL_KEY_CHARS);
+  }
+
+  /**
+   * Frees the off-heap memory of this tree. The tree can't be used after it was closed.
+   */
+  @Override
+  public void close() {
+    free();
+    nodes = null;
+    keys = null;
+    root = NIL;
+    size = 0;
+  }
+
+  // ---- iteration ----
+
+  @Override
+  public void setIteratorMin(Comparable<String> min) {
+    this.iteratorMin = min;
+  }
+
+  @Override
+  public void setIteratorMax(Comparable<String> max) {
+    this.iteratorMax = max;
+  }
+
+  /**
+   * Returns an iterator over the values in ascending order, limited by the minimum and maximum set
+   * through setIteratorMin and setIteratorMax. The iterator follows the parent links, so it only
+   * allocates the Strings it returns.
+   */
+  @Override
+  public Iterator<String> iterator() {
+    return iterator(iteratorMin, iteratorMax);
+  }
+
+  /**
+   * Returns an iterator over the values from min to max, both inclusive, ignoring the bounds set
+   * through setIteratorMin and setIteratorMax.
+   *
+   * @param min the minimum value to return, or null for no minimum
+   * @param max the maximum value to return, or null for no maximum
+   */
+  @Override
+  public Iterator<String> iterator(Comparable<String> min, Comparable<String> max) {
+    int first = NIL;
+    int last = NIL;
+    // left-most node that is at least the minimum
+    for (int node = root; node != NIL; ) {
+      if (min == null || compare(min, node) <= 0) {
+        first = node;
+        node = left(node);
+      } else {
+        node = right(node);
+      }
+    }
+    // right-most node that is at most the maximum
+    for (int node = root; node != NIL; ) {
+      if (max == null || compare(max, node) >= 0) {
+        last = node;
+        node = right(node);
+      } else {
+        node = left(node);
+      }
+    }
+    if (first != NIL && last != NIL && compare(keyAt(first), last) > 0) {
+      first = NIL;
+    }
+    int start = first;
+    int stop = last;
+    return new Iterator<>() {
+      // slot of the node returned by the next call, or NIL when the iterator is finished
+      private int next = start;
+
+      @Override
+      public boolean hasNext() {
+        return next != NIL;
+      }
+
+      @Override
+      public String next() {
+        if (next == NIL) {
+          throw new NoSuchElementException("No more values to return.");
+        }
+        int node = next;
+        next = node == stop ? NIL : successor(node);
+        return keyAt(node);
+      }
+    };
+  }
+
+}
@@ -0,0 +1,509 @@
+package Backend.src.main.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable red-black tree. Every update returns a new version of the tree that shares all but
+ * the O(log n) nodes on the updated path with the version it was made from, so a version can be
+ * read by any number of threads, without locking, while newer versions are being made. Versions
+ * that nobody references any more are reclaimed by the garbage collector.
+ *
+ * Values that compare equal are kept in a single node together with the number of times they were
+ * inserted, and every node also knows the number of values in its subtree. Insertion follows
+ * Okasaki's balance cases and deletion follows Kahrs, both rebuilding only the search path.
+ */
+public final class PersistentRedBlackTree<T extends Comparable<T>> implements Iterable<T> {
+
+  /**
+   * Immutable node of a PersistentRedBlackTree.
+   */
+  public static final class Node<T> {
+    private final T value;
+    private final int count;
+    private final int size;
+    private final boolean red;
+    private final Node<T> left;
+    private final Node<T> right;
+
+    Node(boolean red, Node<T> left, T value, int count, Node<T> right) {
+      this.red = red;
+      this.left = left;
+      this.value = value;
+      this.count = count;
+      this.right = right;
+      this.size = count + sizeOf(left) + sizeOf(right);
+    }
+
+    public T getValue() {
+      return value;
+    }
+
+    /**
+     * @return the number of times the value of this node was inserted
+     */
+    public int getCount() {
+      return count;
+    }
+
+    /**
+     * @return the number of values in the subtree of this node, including duplicates
+     */
+    public int getSize() {
+      return size;
+    }
+
+    public boolean isRed() {
+      return red;
+    }
+
+    public Node<T> getLeft() {
+      return left;
+    }
+
+    public Node<T> getRight() {
+      return right;
+    }
+  }
+
+  private final Node<T> root;
+  private final Comparator<? super T> comparator;
+
+  private PersistentRedBlackTree(Node<T> root, Comparator<? super T> comparator) {
+    this.root = root;
+    this.comparator = comparator;
+  }
+
+  /**
+   * @return an empty tree that orders its values by their natural ordering
+   */
+  public static <T extends Comparable<T>> PersistentRedBlackTree<T> empty() {
+    return new PersistentRedBlackTree<>(null, null);
+  }
+
+  /**
+   * @param comparator the comparator that orders the values, or null for natural ordering
+   * @return an empty tree that orders its values with the provided comparator
+   */
+  public static <T extends Comparable<T>> PersistentRedBlackTree<T> empty(
+      Comparator<? super T> comparator) {
+    return new PersistentRedBlackTree<T>(null, comparator);
+  }
+
+  /**
+   * Builds a tree from values in ascending order in O(n) time. Equal values are merged into one
+   * node, every level of the tree is full except the lowest, and the nodes of the lowest level are
+   * red, so no rebalancing is needed.
+   *
+   * @param sorted     the values in ascending order
+   * @param comparator the comparator that orders the values, or null for natural ordering
+   * @return a tree holding the values
+   * @throws IllegalArgumentException if the values are not in ascending order
+   */
+  public static <T extends Comparable<T>> PersistentRedBlackTree<T> fromSorted(
+      Iterator<? extends T> sorted, Comparator<? super T> comparator) {
+    PersistentRedBlackTree<T> empty = PersistentRedBlackTree.<T>empty(comparator);
+    List<T> values = new ArrayList<>();
+    List<Integer> counts = new ArrayList<>();
+    while (sorted.hasNext()) {
+      T value = sorted.next();
+      if (value == null) {
+        throw new NullPointerException("Cannot insert null into the tree.");
+      }
+      int last = values.size() - 1;
+      int comparison = last < 0 ? 1 : empty.compare(value, values.get(last));
+      if (comparison < 0) {
+        throw new IllegalArgumentException("Values are not in ascending order.");
+      }
+      if (comparison == 0) {
+        counts.set(last, counts.get(last) + 1);
+      } else {
+        values.add(value);
+        counts.add(1);
+      }
+    }
+    int redLevel = 31 - Integer.numberOfLeadingZeros(values.size() + 1);
+    return new PersistentRedBlackTree<>(build(values, counts, 0, values.size() - 1, 0, redLevel),
+        comparator);
+  }
+
+  private static <T> Node<T> build(List<T> values, List<Integer> counts, int lo, int hi,
+      int level, int redLevel) {
+    if (lo > hi) {
+      return null;
+    }
+    int mid = (lo + hi) >>> 1;
+    Node<T> left = build(values, counts, lo, mid - 1, level + 1, redLevel);
+    Node<T> right = build(values, counts, mid + 1, hi, level + 1, redLevel);
+    return new Node<>(level == redLevel, left, values.get(mid), counts.get(mid), right);
+  }
+
+  /**
+   * @return the root node of this version, or null if it is empty
+   */
+  public Node<T> getRoot() {
+    return root;
+  }
+
+  /**
+   * @return the comparator that orders the values, or null for natural ordering
+   */
+  public Comparator<? super T> comparator() {
+    return comparator;
+  }
+
+  /**
+   * @return the number of values in this version, including duplicates
+   */
+  public int size() {
+    return sizeOf(root);
+  }
+
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  /**
+   * Checks whether a value is stored in this version.
+   *
+   * @param data the value to look for
+   * @return true if this version contains data one or more times
+   */
+  public boolean contains(Comparable<T> data) {
+    return data != null && find(data) != null;
+  }
+
+  /**
+   * Counts the occurrences of a value in this version.
+   *
+   * @param data the value to look for
+   * @return the number of times data is stored
+   */
+  public int count(Comparable<T> data) {
+    Node<T> node = data == null ? null : find(data);
+    return node == null ? 0 : node.count;
+  }
+
+  private Node<T> find(Comparable<T> data) {
+    Node<T> node = root;
+    while (node != null) {
+      int comparison = compareKey(data, node.value);
+      if (comparison == 0) {
+        return node;
+      }
+      node = comparison < 0 ? node.left : node.right;
+    }
+    return null;
+  }
+
+  /**
+   * Returns a version with one more occurrence of a value. This version is not changed.
+   *
+   * @param data the value to insert
+   * @return the new version
+   * @throws NullPointerException if data is null
+   */
+  public PersistentRedBlackTree<T> with(T data) {
+    if (data == null) {
+      throw new NullPointerException("Cannot insert null into the tree.");
+    }
+    return new PersistentRedBlackTree<>(blacken(insert(root, data)), comparator);
+  }
+
+  /**
+   * Returns a version with one occurrence of a value less, or this version if it does not contain
+   * the value.
+   *
+   * @param data the value to remove
+   * @return the new version
+   * @throws NullPointerException if data is null
+   */
+  public PersistentRedBlackTree<T> without(T data) {
+    if (data == null) {
+      throw new NullPointerException("Cannot remove null from the tree.");
+    }
+    Node<T> node = find(data);
+    if (node == null) {
+      return this;
+    }
+    if (node.count > 1) {
+      return new PersistentRedBlackTree<>(decrement(root, data), comparator);
+    }
+    return new PersistentRedBlackTree<>(blacken(delete(root, data)), comparator);
+  }
+
+  /**
+   * Returns a version without any occurrence of a value, or this version if it does not contain
+   * the value.
+   *
+   * @param data the value to remove
+   * @return the new version
+   * @throws NullPointerException if data is null
+   */
+  public PersistentRedBlackTree<T> withoutAll(T data) {
+    if (data == null) {
+      throw new NullPointerException("Cannot remove null from the tree.");
+    }
+    if (find(data) == null) {
+      return this;
+    }
+    return new PersistentRedBlackTree<>(blacken(delete(root, data)), comparator);
+  }
+
+  /**
+   * Copies the search path for data, inserting it as a red leaf or counting it once more, and
+   * repairs red-red violations on the way back up.
+   */
+  private Node<T> insert(Node<T> node, T data) {
+    if (node == null) {
+      return new Node<>(true, null, data, 1, null);
+    }
+    int comparison = compare(data, node.value);
+    if (comparison == 0) {
+      return new Node<>(node.red, node.left, node.value, node.count + 1, node.right);
+    }
+    if (node.red) {
+      return comparison < 0 ? copy(true, insert(node.left, data), node, node.right)
+          : copy(true, node.left, node, insert(node.right, data));
+    }
+    return comparison < 0 ? balance(insert(node.left, data), node, node.right)
+        : balance(node.left, node, insert(node.right, data));
+  }
+
+  /**
+   * Copies the search path for data, which must be stored more than once, counting it once less.
+   */
+  private Node<T> decrement(Node<T> node, T data) {
+    int comparison = compare(data, node.value);
+    if (comparison == 0) {
+      return new Node<>(node.red, node.left, node.value, node.count - 1, node.right);
+    }
+    return comparison < 0 ? copy(node.red, decrement(node.left, data), node, node.right)
+        : copy(node.red, node.left, node, decrement(node.right, data));
+  }
+
+  /**
+   * Copies the search path for data, which must be stored in the subtree, without its node. When
+   * the subtree has a black root the result is one black level shorter, and balanceLeft or
+   * balanceRight restores the black height one level up.
+   */
+  private Node<T> delete(Node<T> node, T data) {
+    int comparison = compare(data, node.value);
+    if (comparison < 0) {
+      return isBlack(node.left) ? balanceLeft(delete(node.left, data), node, node.right)
+          : copy(true, delete(node.left, data), node, node.right);
+    }
+    if (comparison > 0) {
+      return isBlack(node.right) ? balanceRight(node.left, node, delete(node.right, data))
+          : copy(true, node.left, node, delete(node.right, data));
+    }
+    return append(node.left, node.right);
+  }
+
+  /**
+   * Joins the two subtrees of a deleted node, where every value of left precedes every value of
+   * right and both have the same black height.
+   */
+  private static <T> Node<T> append(Node<T> left, Node<T> right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    if (left.red && right.red) {
+      Node<T> middle = append(left.right, right.left);
+      if (isRed(middle)) {
+        return copy(true, copy(true, left.left, left, middle.left), middle,
+            copy(true, middle.right, right, right.right));
+      }
+      return copy(true, left.left, left, copy(true, middle, right, right.right));
+    }
+    if (!left.red && !right.red) {
+      Node<T> middle = append(left.right, right.left);
+      if (isRed(middle)) {
+        return copy(true, copy(false, left.left, left, middle.left), middle,
+            copy(false, middle.right, right, right.right));
+      }
+      return balanceLeft(left.left, left, copy(false, middle, right, right.right));
+    }
+    if (right.red) {
+      return copy(true, append(left, right.left), right, right.right);
+    }
+    return copy(true, left.left, left, append(left.right, right));
+  }
+
+  /**
+   * Rebuilds a black node whose new subtrees may hold a red node with a red child.
+   */
+  private static <T> Node<T> balance(Node<T> left, Node<T> key, Node<T> right) {
+    if (isRed(left) && isRed(right)) {
+      return copy(true, blacken(left), key, blacken(right));
+    }
+    if (isRed(left) && isRed(left.left)) {
+      return copy(true, blacken(left.left), left, copy(false, left.right, key, right));
+    }
+    if (isRed(left) && isRed(left.right)) {
+      return copy(true, copy(false, left.left, left, left.right.left), left.right,
+          copy(false, left.right.right, key, right));
+    }
+    if (isRed(right) && isRed(right.right)) {
+      return copy(true, copy(false, left, key, right.left), right, blacken(right.right));
+    }
+    if (isRed(right) && isRed(right.left)) {
+      return copy(true, copy(false, left, key, right.left.left), right.left,
+          copy(false, right.left.right, right, right.right));
+    }
+    return copy(false, left, key, right);
+  }
+
+  /**
+   * Rebuilds a node whose left subtree lost one black level.
+   */
+  private static <T> Node<T> balanceLeft(Node<T> left, Node<T> key, Node<T> right) {
+    if (isRed(left)) {
+      return copy(true, blacken(left), key, right);
+    }
+    if (isBlack(right)) {
+      return balance(left, key, redden(right));
+    }
+    if (isRed(right) && isBlack(right.left)) {
+      return copy(true, copy(false, left, key, right.left.left), right.left,
+          balance(right.left.right, right, redden(right.right)));
+    }
+    throw new IllegalStateException("Red-black invariant violated during delete.");
+  }
+
+  /**
+   * Rebuilds a node whose right subtree lost one black level.
+   */
+  private static <T> Node<T> balanceRight(Node<T> left, Node<T> key, Node<T> right) {
+    if (isRed(right)) {
+      return copy(true, left, key, blacken(right));
+    }
+    if (isBlack(left)) {
+      return balance(redden(left), key, right);
+    }
+    if (isRed(left) && isBlack(left.right)) {
+      return copy(true, balance(redden(left.left), left, left.right.left), left.right,
+          copy(false, left.right.right, key, right));
+    }
+    throw new IllegalStateException("Red-black invariant violated during delete.");
+  }
+
+  /**
+   * @return a new node with the value and count of key and the provided color and subtrees
+   */
+  private static <T> Node<T> copy(boolean red, Node<T> left, Node<T> key, Node<T> right) {
+    return new Node<>(red, left, key.value, key.count, right);
+  }
+
+  private static <T> Node<T> blacken(Node<T> node) {
+    return node == null || !node.red ? node : copy(false, node.left, node, node.right);
+  }
+
+  /**
+   * Turns a black node red; the caller guarantees the node is black.
+   */
+  private static <T> Node<T> redden(Node<T> node) {
+    if (!isBlack(node)) {
+      throw new IllegalStateException("Red-black invariant violated during delete.");
+    }
+    return copy(true, node.left, node, node.right);
+  }
+
+  private static boolean isRed(Node<?> node) {
+    return node != null && node.red;
+  }
+
+  private static boolean isBlack(Node<?> node) {
+    return node != null && !node.red;
+  }
+
+  private static int sizeOf(Node<?> node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private int compare(T a, T b) {
+    return comparator == null ? a.compareTo(b) : comparator.compare(a, b);
+  }
+
+  @SuppressWarnings("unchecked")
+  private int compareKey(Comparable<T> key, T data) {
+    return comparator == null ? key.compareTo(data) : comparator.compare((T) key, data);
+  }
+
+  /**
+   * Returns an iterator over the values of this version in ascending order. A value inserted
+   * several times is returned once per occurrence.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(null, null);
+  }
+
+  /**
+   * Returns an iterator over the values of this version from min to max, both inclusive.
+   *
+   * @param min the minimum value to return, or null for no minimum
+   * @param max the maximum value to return, or null for no maximum
+   */
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    return new Iterator<>() {
+      // nodes whose value and right subtree are still to be visited, deepest on top
+      private final Deque<Node<T>> pending = new ArrayDeque<>();
+      private Node<T> current = null;
+      // occurrences of the current value that are still to be returned
+      private int remaining = 0;
+
+      {
+        // the left spine of the nodes that are at least min
+        for (Node<T> node = root; node != null; ) {
+          if (min == null || compareKey(min, node.value) <= 0) {
+            pending.push(node);
+            node = node.left;
+          } else {
+            node = node.right;
+          }
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        if (remaining > 0) {
+          return true;
+        }
+        if (pending.isEmpty()) {
+          return false;
+        }
+        Node<T> node = pending.peek();
+        if (max != null && compareKey(max, node.value) < 0) {
+          pending.clear();
+          return false;
+        }
+        return true;
+      }
+
+      @Override
+      public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException("No more values to return.");
+        }
+        if (remaining == 0) {
+          current = pending.pop();
+          remaining = current.count;
+          for (Node<T> node = current.right; node != null; node = node.left) {
+            pending.push(node);
+          }
+        }
+        remaining--;
+        return current.value;
+      }
+    };
+  }
+}
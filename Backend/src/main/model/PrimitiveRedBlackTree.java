@@ -0,0 +1,576 @@
+package Backend.src.main.model;
+import java.util.Arrays;
+
+/**
+ * This class holds the parts of an array-backed red-black tree that don't depend on the type of
+ * the keys. Nodes are identified by their index into parallel arrays (struct-of-arrays) instead of
+ * being separate objects: the child and parent links are int indices, and the colors are single
+ * bits. Index 0 is a black sentinel that stands for every missing child, so the algorithms below
+ * follow the textbook versions without null checks. Removed slots are kept in a free list and
+ * reused by later insertions. Subclasses store the keys in a primitive array of their own and
+ * implement the descents, so that comparisons never box a key.
+ */
+abstract class PrimitiveRedBlackTree<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+  // index of the sentinel node that stands for every missing child
+  protected static final int NIL = 0;
+  // capacity used by a tree that is created without an explicit capacity
+  protected static final int DEFAULT_CAPACITY = 16;
+  // largest number of slots the arrays can hold
+  private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+  // index of the left child of every node
+  protected int[] left;
+  // index of the right child of every node
+  protected int[] right;
+  // index of the parent of every node
+  protected int[] parent;
+  // one bit per node, set when the node is red
+  protected long[] red;
+
+  // index of the root node, or NIL when the tree is empty
+  protected int root = NIL;
+  // number of values stored in the tree
+  protected int size = 0;
+  // first slot that has never been used
+  private int nextUnused = 1;
+  // first slot of the free list, which is chained through the right array
+  private int freeList = NIL;
+  // capacity the arrays are reset to by clear()
+  private final int initialCapacity;
+
+  // the minimum and maximum for iterators created for this tree, or null for no bound
+  protected Comparable<T> iteratorMin = null;
+  protected Comparable<T> iteratorMax = null;
+
+  /**
+   * Creates an empty tree with room for the provided number of values before its arrays grow.
+   *
+   * @param initialCapacity the number of values the tree can hold before growing
+   * @throws IllegalArgumentException if initialCapacity is negative
+   */
+  protected PrimitiveRedBlackTree(int initialCapacity) {
+    if (initialCapacity < 0 || initialCapacity >= MAX_CAPACITY) {
+      throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+    }
+    this.initialCapacity = initialCapacity;
+    allocateArrays(initialCapacity + 1);
+  }
+
+  /**
+   * Resizes the key array of the subclass to the provided number of slots, keeping its contents.
+   *
+   * @param capacity the new number of slots, including the sentinel slot
+   */
+  protected abstract void resizeKeys(int capacity);
+
+  /**
+   * Compares a key against the key stored in a node.
+   *
+   * @param key  the key to compare
+   * @param node the index of a node of this tree
+   * @return a negative number, zero, or a positive number as key is less than, equal to, or
+   * greater than the key of node
+   */
+  protected abstract int compareKey(Comparable<T> key, int node);
+
+  /**
+   * @param node the index of a node of this tree
+   * @return the key of node, boxed
+   */
+  protected abstract T keyAt(int node);
+
+  /**
+   * Replaces every array with a new, empty one of the provided number of slots.
+   */
+  private void allocateArrays(int capacity) {
+    left = new int[capacity];
+    right = new int[capacity];
+    parent = new int[capacity];
+    red = new long[(capacity + 63) >>> 6];
+    resizeKeys(capacity);
+  }
+
+  /**
+   * Takes a slot from the free list, or from the unused tail of the arrays, growing them when
+   * they are full.
+   *
+   * @return the index of a slot that is not part of the tree
+   */
+  protected final int allocate() {
+    int node = freeList;
+    if (node != NIL) {
+      freeList = right[node];
+      return node;
+    }
+    if (nextUnused == left.length) {
+      grow();
+    }
+    return nextUnused++;
+  }
+
+  /**
+   * Grows every array by half of its current length.
+   */
+  private void grow() {
+    int oldCapacity = left.length;
+    if (oldCapacity >= MAX_CAPACITY) {
+      throw new IllegalStateException("Tree is full.");
+    }
+    int capacity = (int) Math.min(MAX_CAPACITY, oldCapacity + Math.max(oldCapacity >> 1, 8L));
+    left = Arrays.copyOf(left, capacity);
+    right = Arrays.copyOf(right, capacity);
+    parent = Arrays.copyOf(parent, capacity);
+    red = Arrays.copyOf(red, (capacity + 63) >>> 6);
+    resizeKeys(capacity);
+  }
+
+  /**
+   * Returns a slot that was unlinked from the tree to the free list.
+   */
+  private void release(int node) {
+    left[node] = NIL;
+    parent[node] = NIL;
+    setBlack(node);
+    right[node] = freeList;
+    freeList = node;
+  }
+
+  protected final boolean isRed(int node) {
+    return (red[node >>> 6] & (1L << node)) != 0;
+  }
+
+  protected final void setRed(int node) {
+    red[node >>> 6] |= 1L << node;
+  }
+
+  protected final void setBlack(int node) {
+    red[node >>> 6] &= ~(1L << node);
+  }
+
+  private void setColor(int node, boolean isRed) {
+    if (isRed) {
+      setRed(node);
+    } else {
+      setBlack(node);
+    }
+  }
+
+  /**
+   * Links a freshly allocated node (whose key is already stored) below the parent found by a
+   * descent, then restores the red-black properties.
+   *
+   * @param node     the new node
+   * @param up       the parent of the new node, or NIL when the tree is empty
+   * @param leftSide true to attach node as the left child of up, false for the right child
+   */
+  protected final void attach(int node, int up, boolean leftSide) {
+    left[node] = NIL;
+    right[node] = NIL;
+    parent[node] = up;
+    if (up == NIL) {
+      root = node;
+    } else if (leftSide) {
+      left[up] = node;
+    } else {
+      right[up] = node;
+    }
+    setRed(node);
+    size++;
+    ensureRedProperty(node);
+  }
+
+  /**
+   * Repairs red property violations caused by the red node, walking up the tree.
+   */
+  private void ensureRedProperty(int node) {
+    while (isRed(parent[node])) {
+      int up = parent[node];
+      int grandparent = parent[up];
+      if (up == left[grandparent]) {
+        int uncle = right[grandparent];
+        if (isRed(uncle)) {
+          setBlack(up);
+          setBlack(uncle);
+          setRed(grandparent);
+          node = grandparent;
+        } else {
+          if (node == right[up]) {
+            node = up;
+            rotateLeft(node);
+            up = parent[node];
+          }
+          setBlack(up);
+          setRed(grandparent);
+          rotateRight(grandparent);
+        }
+      } else {
+        int uncle = left[grandparent];
+        if (isRed(uncle)) {
+          setBlack(up);
+          setBlack(uncle);
+          setRed(grandparent);
+          node = grandparent;
+        } else {
+          if (node == left[up]) {
+            node = up;
+            rotateRight(node);
+            up = parent[node];
+          }
+          setBlack(up);
+          setRed(grandparent);
+          rotateLeft(grandparent);
+        }
+      }
+    }
+    setBlack(root);
+  }
+
+  /**
+   * Rotates the right child of node into its position.
+   */
+  private void rotateLeft(int node) {
+    int child = right[node];
+    right[node] = left[child];
+    if (left[child] != NIL) {
+      parent[left[child]] = node;
+    }
+    replaceChild(node, child);
+    left[child] = node;
+    parent[node] = child;
+  }
+
+  /**
+   * Rotates the left child of node into its position.
+   */
+  private void rotateRight(int node) {
+    int child = left[node];
+    left[node] = right[child];
+    if (right[child] != NIL) {
+      parent[right[child]] = node;
+    }
+    replaceChild(node, child);
+    right[child] = node;
+    parent[node] = child;
+  }
+
+  /**
+   * Links replacement to the parent of node in node's place. The sentinel may be passed as the
+   * replacement; its parent is then set too, which the delete repair relies on.
+   */
+  private void replaceChild(int node, int replacement) {
+    int up = parent[node];
+    parent[replacement] = up;
+    if (up == NIL) {
+      root = replacement;
+    } else if (node == left[up]) {
+      left[up] = replacement;
+    } else {
+      right[up] = replacement;
+    }
+  }
+
+  /**
+   * Unlinks the provided node, repairs the red-black properties and returns its slot to the free
+   * list.
+   *
+   * @param node the index of a node of this tree
+   */
+  protected final void removeNode(int node) {
+    int moved = node;
+    boolean removedRed = isRed(moved);
+    int replacement;
+    if (left[node] == NIL) {
+      replacement = right[node];
+      replaceChild(node, replacement);
+    } else if (right[node] == NIL) {
+      replacement = left[node];
+      replaceChild(node, replacement);
+    } else {
+      moved = minimum(right[node]);
+      removedRed = isRed(moved);
+      replacement = right[moved];
+      if (parent[moved] == node) {
+        parent[replacement] = moved;
+      } else {
+        replaceChild(moved, replacement);
+        right[moved] = right[node];
+        parent[right[moved]] = moved;
+      }
+      replaceChild(node, moved);
+      left[moved] = left[node];
+      parent[left[moved]] = moved;
+      setColor(moved, isRed(node));
+    }
+    if (!removedRed) {
+      ensureBlackProperty(replacement);
+    }
+    // the sentinel's parent may have been written while it stood in for the replacement
+    parent[NIL] = NIL;
+    size--;
+    release(node);
+  }
+
+  /**
+   * Repairs the black height violation left by removing a black node, where node carries the
+   * extra black.
+   */
+  private void ensureBlackProperty(int node) {
+    while (node != root && !isRed(node)) {
+      int up = parent[node];
+      if (node == left[up]) {
+        int sibling = right[up];
+        if (isRed(sibling)) {
+          setBlack(sibling);
+          setRed(up);
+          rotateLeft(up);
+          sibling = right[up];
+        }
+        if (!isRed(left[sibling]) && !isRed(right[sibling])) {
+          setRed(sibling);
+          node = up;
+        } else {
+          if (!isRed(right[sibling])) {
+            setBlack(left[sibling]);
+            setRed(sibling);
+            rotateRight(sibling);
+            sibling = right[up];
+          }
+          setColor(sibling, isRed(up));
+          setBlack(up);
+          setBlack(right[sibling]);
+          rotateLeft(up);
+          node = root;
+        }
+      } else {
+        int sibling = left[up];
+        if (isRed(sibling)) {
+          setBlack(sibling);
+          setRed(up);
+          rotateRight(up);
+          sibling = left[up];
+        }
+        if (!isRed(left[sibling]) && !isRed(right[sibling])) {
+          setRed(sibling);
+          node = up;
+        } else {
+          if (!isRed(left[sibling])) {
+            setBlack(right[sibling]);
+            setRed(sibling);
+            rotateLeft(sibling);
+            sibling = left[up];
+          }
+          setColor(sibling, isRed(up));
+          setBlack(up);
+          setBlack(left[sibling]);
+          rotateRight(up);
+          node = root;
+        }
+      }
+    }
+    setBlack(node);
+  }
+
+  /**
+   * @return the index of the left-most node of the subtree rooted at node
+   */
+  protected final int minimum(int node) {
+    while (left[node] != NIL) {
+      node = left[node];
+    }
+    return node;
+  }
+
+  /**
+   * @return the index of the in-order successor of node, or NIL if node is the last node
+   */
+  protected final int successor(int node) {
+    if (right[node] != NIL) {
+      return minimum(right[node]);
+    }
+    int up = parent[node];
+    while (up != NIL && node == right[up]) {
+      node = up;
+      up = parent[up];
+    }
+    return up;
+  }
+
+  /**
+   * Finds a node with a key equal to the provided key.
+   *
+   * @return the index of the node, or NIL if there is none
+   */
+  protected final int findNode(Comparable<T> key) {
+    int node = root;
+    while (node != NIL) {
+      int c = compareKey(key, node);
+      if (c == 0) {
+        return node;
+      }
+      node = c < 0 ? left[node] : right[node];
+    }
+    return NIL;
+  }
+
+  /**
+   * @return the index of the left-most node whose key is at least min, or NIL if there is none
+   */
+  protected final int lowerBound(Comparable<T> min) {
+    int found = NIL;
+    int node = root;
+    while (node != NIL) {
+      if (compareKey(min, node) <= 0) {
+        found = node;
+        node = left[node];
+      } else {
+        node = right[node];
+      }
+    }
+    return found;
+  }
+
+  /**
+   * @return the index of the right-most node whose key is at most max, or NIL if there is none
+   */
+  protected final int upperBound(Comparable<T> max) {
+    int found = NIL;
+    int node = root;
+    while (node != NIL) {
+      if (compareKey(max, node) >= 0) {
+        found = node;
+        node = right[node];
+      } else {
+        node = left[node];
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Check whether data is stored in the tree.
+   *
+   * @param data the value to check for in the collection
+   * @return true if the collection contains data one or more times, and false otherwise
+   */
+  @Override
+  public boolean contains(Comparable<T> data) {
+    return findNode(data) != NIL;
+  }
+
+  /**
+   * Removes a single occurrence of data from the tree.
+   *
+   * @param data the value being removed
+   * @return true if one occurrence of data was removed, and false otherwise
+   * @throws NullPointerException if data argument is null
+   */
+  @Override
+  public boolean remove(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Null values can't be removed.");
+    }
+    int node = findNode(data);
+    if (node == NIL) {
+      return false;
+    }
+    removeNode(node);
+    return true;
+  }
+
+  /**
+   * Removes every occurrence of data from the tree.
+   *
+   * @param data the value being removed
+   * @return the number of values that were removed
+   * @throws NullPointerException if data argument is null
+   */
+  @Override
+  public int removeAll(T data) throws NullPointerException {
+    int removed = 0;
+    while (remove(data)) {
+      removed++;
+    }
+    return removed;
+  }
+
+  /**
+   * @return the number of values in the collection, including duplicates
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return true if the collection contains 0 values, false otherwise
+   */
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes all values from the tree and shrinks its arrays back to their initial capacity.
+   */
+  @Override
+  public void clear() {
+    root = NIL;
+    size = 0;
+    nextUnused = 1;
+    freeList = NIL;
+    allocateArrays(initialCapacity + 1);
+  }
+
+  /**
+   * Sets the minimum for iterators created after this call.
+   *
+   * @param min the minimum for iterators created for this tree, or null for no minimum
+   */
+  @Override
+  public void setIteratorMin(Comparable<T> min) {
+    this.iteratorMin = min;
+  }
+
+  /**
+   * Sets the maximum for iterators created after this call.
+   *
+   * @param max the maximum for iterators created for this tree, or null for no maximum
+   */
+  @Override
+  public void setIteratorMax(Comparable<T> max) {
+    this.iteratorMax = max;
+  }
+
+  /**
+   * Finds the first and last node an iterator has to visit for the provided bounds. Both are NIL
+   * when the iterator has nothing to return.
+   *
+   * @param min the minimum value to return, or null for no minimum
+   * @param max the maximum value to return, or null for no maximum
+   * @return the first node in the low 32 bits and the last node in the high 32 bits
+   */
+  protected final long iteratorRange(Comparable<T> min, Comparable<T> max) {
+    int first = min == null ? (root == NIL ? NIL : minimum(root)) : lowerBound(min);
+    int last = max == null ? maximum() : upperBound(max);
+    if (first == NIL || last == NIL || compareKey(keyAt(first), last) > 0) {
+      return 0L;
+    }
+    return ((long) last << 32) | first;
+  }
+
+  /**
+   * @return the index of the right-most node of the tree, or NIL if the tree is empty
+   */
+  private int maximum() {
+    int node = root;
+    if (node == NIL) {
+      return NIL;
+    }
+    while (right[node] != NIL) {
+      node = right[node];
+    }
+    return node;
+  }
+
+}
@@ -1,12 +1,24 @@
 package Backend.src.main.model;
 /**
- * This class represents a node in a RedBlackTree and inherits from BSTNode.
+ * This class represents a node in a RedBlackTree and inherits from BSTNode. The class is final so
+ * that the tree's hot paths only ever see this one node type.
  */
-public class RBTNode<T> extends BSTNode<T> {
+public final class RBTNode<T> extends BSTNode<T> {
 
     // store whether this is a red or black node
     protected boolean isRed = true;
 
+    // number of occurrences of data this node stands for, which is only above 1 in a tree that
+    // counts duplicates
+    protected int count = 1;
+
+    // number of values in the subtree rooted at this node, counting every occurrence
+    protected int size = 1;
+
+    // aggregate of the values in the subtree rooted at this node, which only an augmented tree
+    // keeps
+    protected Object aggregate;
+
     /**
      * Constructor that creates a new node with the value data.
      * Both parent and child references of the new node are initialized to null.
@@ -49,6 +61,21 @@ public class RBTNode<T> extends BSTNode<T> {
         return this.isRed;
     }
 
+    /**
+     * Returns the number of values stored in the subtree rooted at this node.
+     * @return the size of this node's subtree, including this node
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of occurrences of the value stored in this node
+     */
+    public int getCount() {
+        return this.count;
+    }
+
     /**
      * Inverts the color of this node, turning it either from red to black, or from
      * black to red.
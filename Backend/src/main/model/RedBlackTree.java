@@ -1,25 +1,277 @@
 package Backend.src.main.model;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
 /** Class handles Red Black trees.
  *
  */
 public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
+
+  // whether duplicates are counted in the node of their value instead of getting their own node
+  protected final boolean multiset;
+  // the monoid aggregated over every subtree, or null if the tree is not augmented
+  protected final Augmentation<? super T, ?> augmentation;
+  // whether insert starts its search at the node of the previously inserted value
+  private boolean fingerInsertion = false;
+  // the node returned by the last finger insert, which is always a node of this tree or null
+  private RBTNode<T> finger = null;
+  // the node of the largest value, when a finger insert added it, or null
+  private RBTNode<T> last = null;
+  // the lowest node whose size, like the sizes of all its ancestors, lacks pending values that
+  // finger inserts added below it, or null when every size is exact
+  private RBTNode<T> pendingNode = null;
+  private int pending = 0;
+
+  /**
+   * Creates an empty red-black tree that orders its values by their natural ordering.
+   */
+  public RedBlackTree() {
+    this(null);
+  }
+
+  /**
+   * Creates an empty red-black tree that orders its values with the provided comparator.
+   *
+   * @param comparator the ordering for this tree, or null to use the natural ordering
+   */
+  public RedBlackTree(Comparator<? super T> comparator) {
+    this(comparator, false);
+  }
+
+  /**
+   * Creates an empty red-black tree that can run in multiset mode. In multiset mode every
+   * distinct value is stored in one node with an occurrence count: inserting a value that is
+   * already stored only increments the count, without allocating a node or rebalancing, and
+   * removing it decrements the count until the last occurrence is removed. size(), contains and
+   * iteration behave the same in both modes.
+   *
+   * @param comparator the ordering for this tree, or null to use the natural ordering
+   * @param multiset   whether duplicates are counted instead of stored as separate nodes
+   */
+  public RedBlackTree(Comparator<? super T> comparator, boolean multiset) {
+    this(comparator, multiset, null);
+  }
+
+  /**
+   * Creates an empty red-black tree that keeps the aggregate of an augmentation for every
+   * subtree. Keeping the aggregates up to date makes inserts and removals recompute them on the
+   * path to the root, which costs O(log n) combine calls per update.
+   *
+   * @param comparator   the ordering for this tree, or null to use the natural ordering
+   * @param multiset     whether duplicates are counted instead of stored as separate nodes
+   * @param augmentation the monoid to aggregate over every subtree, or null for none
+   */
+  public RedBlackTree(Comparator<? super T> comparator, boolean multiset,
+      Augmentation<? super T, ?> augmentation) {
+    super(comparator);
+    this.multiset = multiset;
+    this.augmentation = augmentation;
+  }
+
+  /**
+   * @return true if this tree counts duplicates in the node of their value
+   */
+  public boolean isMultiset() {
+    return multiset;
+  }
+
+  /**
+   * Turns finger insertion on or off. With finger insertion, insert starts searching for the
+   * position of a value at the node of the previously inserted value, like insertNear, instead of
+   * at the root. Appending ascending values, such as timestamps or sequence numbers, then takes
+   * amortized O(1) time, and clustered values skip most of the descent from the root. Values in
+   * random order gain nothing and pay for a climb from the finger. Multiset trees always search
+   * from the root.
+   *
+   * <p>Finger inserts leave the sizes above the new node to the next read that needs them, such
+   * as rank, select or getRoot, so such a read writes to the tree. A tree that takes finger
+   * inserts must not be read by several threads at once until one read has settled its sizes.
+   *
+   * @param enabled whether insert uses the previously inserted value as a hint
+   */
+  public void setFingerInsertion(boolean enabled) {
+    fingerInsertion = enabled;
+  }
+
   @Override
   public void insert(T data) {
     if (data == null) {
       throw new IllegalArgumentException("Null values can't be inserted.");
     }
+    if (fingerInsertion && !multiset) {
+      insertNear(data, finger);
+      return;
+    }
+    insertFromRoot(data);
+  }
+
+  /**
+   * Inserts a value, starting the search for its position at a hint node instead of at the root.
+   * The search climbs from the hint to the lowest ancestor whose subtree spans the value and
+   * descends from there, so it takes O(log d) comparisons for a value d positions away from the
+   * hint. A value between the hint and the largest value is also searched for from the node of
+   * the largest value, which keeps late arrivals in a stream of timestamps cheap. The sizes of the
+   * ancestors above the new node are not walked: they are kept in one pending count on the lowest
+   * of them and added on the way to the root by the next read that needs them. Appending after
+   * the node returned by the previous call, when that node holds the largest value, therefore
+   * takes amortized O(1) time including rebalancing.
+   *
+   * @param data the value to insert
+   * @param hint a node of this tree near the position of data, usually the node returned by the
+   *             previous call; null, or a node that left this tree, makes the search start at the
+   *             root
+   * @return the node holding data, to use as the hint for the next value
+   * @throws IllegalArgumentException if data is null
+   */
+  public RBTNode<T> insertNear(T data, RBTNode<T> hint) {
+    if (data == null) {
+      throw new IllegalArgumentException("Null values can't be inserted.");
+    }
+    // the finger is known to be a node of this tree, any other hint is checked by a climb
+    if (multiset || hint == null || root == null || hint != finger && !holds(hint)) {
+      return finger = insertFromRoot(data);
+    }
+    // values after the hint are bounded by the first ancestor the climb reaches from the left,
+    // and values up to the hint by the first ancestor it reaches from the right
+    boolean after = compareKey(data, hint.data) > 0;
+    // a new largest value is hung below the last node without climbing the right spine
+    boolean append = after && last != null && (hint == last || compareKey(data, last.data) > 0);
+    RBTNode<T> start = hint;
+    if (append) {
+      start = last;
+    } else if (after && last != null) {
+      start = spanBetween(data, hint, last);
+    } else {
+      boolean bounded = false;
+      for (RBTNode<T> node = hint, parent = node.getUp(); parent != null;
+          node = parent, parent = node.getUp()) {
+        if ((node == parent.left) == after) {
+          bounded = after ? compareKey(data, parent.data) <= 0 : compareKey(data, parent.data) > 0;
+          if (bounded) {
+            break;
+          }
+          // data lies beyond parent, so the subtree of start can't hold it
+          start = parent;
+        }
+      }
+      // a hint that the climb never left from the left is on the right spine, and without a
+      // right child it holds the largest value
+      append = after && !bounded && start == hint && hint.right == null;
+    }
+    finger = addNode(data, start, augmentation == null);
+    if (append) {
+      last = finger;
+    }
+    return finger;
+  }
+
+  /**
+   * Finds a subtree that spans a value lying between two nodes of this tree by climbing from both
+   * at once: from low to the first ancestor above the value, and from high to the first ancestor
+   * below it. The climb that finds its bound first ends the search, so a value close to either
+   * node is found in a few steps, such as a late timestamp that is still near the largest one.
+   *
+   * @param data the value to find a subtree for
+   * @param low  a node whose value is less than data
+   * @param high a node whose value is at least data
+   * @return the root of a subtree whose values are the only ones that data lies among
+   */
+  private RBTNode<T> spanBetween(T data, RBTNode<T> low, RBTNode<T> high) {
+    RBTNode<T> fromLow = low;
+    RBTNode<T> fromHigh = high;
+    for (RBTNode<T> up = low, down = high; ; ) {
+      RBTNode<T> parent = up.getUp();
+      if (parent == null) {
+        return fromLow;
+      }
+      if (up == parent.left) {
+        if (compareKey(data, parent.data) <= 0) {
+          return fromLow;
+        }
+        fromLow = parent;
+      }
+      up = parent;
+      parent = down.getUp();
+      if (parent == null) {
+        return fromHigh;
+      }
+      if (down == parent.right) {
+        if (compareKey(data, parent.data) > 0) {
+          return fromHigh;
+        }
+        fromHigh = parent;
+      }
+      down = parent;
+    }
+  }
+
+  /**
+   * Checks whether a node belongs to this tree by climbing from it to its root. Every step has to
+   * be matched by a child link of the parent, because the nodes a set operation drops keep their
+   * up links into the result, while no node of the result links down to them.
+   */
+  private boolean holds(RBTNode<T> node) {
+    for (RBTNode<T> parent = node.getUp(); parent != null; node = parent, parent = node.getUp()) {
+      if (parent.left != node && parent.right != node) {
+        return false;
+      }
+    }
+    return node == root;
+  }
 
+  /**
+   * Inserts a value by searching for its position from the root.
+   *
+   * @return the node holding data
+   */
+  private RBTNode<T> insertFromRoot(T data) {
+    // the value may be larger than the last one
+    last = null;
+    if (multiset) {
+      RBTNode<T> node = search(data);
+      if (node != null) {
+        addCount(node, 1);
+        return node;
+      }
+    }
+    return addNode(data, (RBTNode<T>) root, false);
+  }
+
+  /**
+   * Links a new node holding data into a subtree and rebalances the tree.
+   *
+   * @param data    the value of the new node
+   * @param subtree the root of the subtree that spans data, or null if this tree is empty
+   * @param defer   whether the sizes of subtree and its ancestors are left to deferGrowth
+   * @return the new node
+   */
+  private RBTNode<T> addNode(T data, RBTNode<T> subtree, boolean defer) {
     RBTNode<T> newNode = new RBTNode<>(data);
+    if (augmentation != null) {
+      updateNode(newNode);
+    }
     if (root == null) {
       root = newNode;
       if (newNode.isRed()) {
         newNode.flipColor();  // Root must be black
       }
-      return;
+      return newNode;
     }
 
     // Insert the node using the standard BST logic
-    super.insertHelper(newNode, root);
+    super.insertHelper(newNode, subtree);
+    // Every ancestor of the new node now has one more value in its subtree
+    if (defer) {
+      for (RBTNode<T> node = newNode.getUp(); node != subtree; node = node.getUp()) {
+        node.size++;
+      }
+      deferGrowth(subtree);
+    } else {
+      growPath(newNode.getUp(), 1);
+    }
 
     // Check and restore Red-Black Tree properties
     ensureRedProperty(newNode);
@@ -28,6 +280,173 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
     if (((RBTNode<T>) root).isRed()) {
       ((RBTNode<T>) root).flipColor();
     }
+    return newNode;
+  }
+
+  /**
+   * Counts a new value in the sizes of node and its ancestors by moving the pending count to
+   * node. Only the nodes between node and the old pending node are visited, which is O(1) when
+   * values are appended one after the other and O(log d) for a value d positions away from the
+   * previous one. When neither node is an ancestor of the other, the old count is settled first.
+   *
+   * @param node the lowest ancestor of a new leaf whose size doesn't count it yet
+   */
+  private void deferGrowth(RBTNode<T> node) {
+    if (pendingNode != null) {
+      // climb from both nodes at once, so the walk ends as soon as one is found above the other
+      RBTNode<T> above = node;
+      RBTNode<T> below = pendingNode;
+      while (above != pendingNode && below != node && (above != null || below != null)) {
+        above = above == null ? null : above.getUp();
+        below = below == null ? null : below.getUp();
+      }
+      if (above == pendingNode) {
+        // the nodes below the old pending node will lack the pending values and the new one
+        for (RBTNode<T> passed = node; passed != pendingNode; passed = passed.getUp()) {
+          passed.size -= pending;
+        }
+      } else if (below == node) {
+        // the nodes below node no longer lack anything
+        for (RBTNode<T> passed = pendingNode; passed != node; passed = passed.getUp()) {
+          passed.size += pending;
+        }
+      } else {
+        settleSizes();
+      }
+    }
+    pendingNode = node;
+    pending++;
+  }
+
+  /**
+   * Adds the pending count of finger inserts to the sizes of the pending node and its ancestors,
+   * which makes every size in this tree exact, in O(log n) time.
+   */
+  protected void settleSizes() {
+    if (pendingNode == null) {
+      // nothing is written, so a settled tree can be read by several threads at once
+      return;
+    }
+    for (RBTNode<T> node = pendingNode; node != null; node = node.getUp()) {
+      node.size += pending;
+    }
+    pendingNode = null;
+    pending = 0;
+  }
+
+  /**
+   * Settles the sizes and forgets the finger. This is called before nodes of this tree are moved
+   * into another tree, rebuilt or dropped.
+   */
+  protected void dropFinger() {
+    settleSizes();
+    finger = last = null;
+  }
+
+  /**
+   * @return the root node of this tree, or null when the tree is empty
+   */
+  public RBTNode<T> getRoot() {
+    settleSizes();
+    return (RBTNode<T>) root;
+  }
+
+  /**
+   * Counts the number of values in the tree in constant time, using the subtree size kept in the
+   * root node and the values finger inserts have not added to it yet.
+   *
+   * @return the number of values in the collection, including duplicates
+   */
+  @Override
+  public int size() {
+    return sizeOf((RBTNode<T>) root) + pending;
+  }
+
+  /**
+   * Removes every value from this tree.
+   */
+  @Override
+  public void clear() {
+    dropFinger();
+    root = null;
+  }
+
+  /**
+   * Checks whether the tree contains a value like contains(key) does, for a reader that may run
+   * while another thread changes the tree. Every level of the descent is reported to budget, which
+   * ends a descent that a concurrent rotation has sent around a cycle. The tree is not written,
+   * not even to settle deferred sizes.
+   *
+   * @param key    the value to look for
+   * @param budget the bound on the work of this read
+   * @return true if the tree contains key one or more times
+   * @throws ConcurrentModificationException if the descent goes deeper than the budget allows
+   */
+  public boolean contains(Comparable<T> key, TraversalBudget budget) {
+    RBTNode<T> node = (RBTNode<T>) root;
+    for (int depth = 0; node != null; depth++) {
+      budget.visit(depth);
+      int comparison = compareKey(key, node.data);
+      if (comparison == 0) {
+        return true;
+      }
+      node = comparison < 0 ? node.getLeft() : node.getRight();
+    }
+    return false;
+  }
+
+  /**
+   * Returns the number of values in the subtree rooted at node.
+   *
+   * @param node the root of a subtree, or null for an empty subtree
+   * @return the size of the subtree, or 0 when node is null
+   */
+  protected static int sizeOf(RBTNode<?> node) {
+    return node == null ? 0 : node.size;
+  }
+
+  /**
+   * Recomputes the subtree size of a node from its count and the sizes of its children. This is
+   * called by the rotations in BSTRotation, so sizes stay correct while the tree is rebalanced.
+   *
+   * @param node the node whose children were changed
+   */
+  @Override
+  protected void updateNode(BSTNode<T> node) {
+    RBTNode<T> n = (RBTNode<T>) node;
+    n.size = n.count + sizeOf(n.getLeft()) + sizeOf(n.getRight());
+    if (n == pendingNode) {
+      // the children of the pending node have exact sizes, but the node itself lacks the pending
+      // values, like its ancestors, whose sizes are recomputed from it
+      n.size -= pending;
+    }
+    if (augmentation != null) {
+      n.aggregate = aggregate(augmentation, n);
+    }
+  }
+
+  /**
+   * Combines the aggregates of the children of a node with the aggregate of its own occurrences.
+   *
+   * @return the aggregate of the subtree rooted at node
+   */
+  @SuppressWarnings("unchecked")
+  private static <T, A> A aggregate(Augmentation<? super T, A> augmentation, RBTNode<T> node) {
+    A result = augmentation.of(node.data, node.count);
+    if (node.left != null) {
+      result = augmentation.combine((A) node.getLeft().aggregate, result);
+    }
+    if (node.right != null) {
+      result = augmentation.combine(result, (A) node.getRight().aggregate);
+    }
+    return result;
+  }
+
+  /**
+   * @return the monoid this tree aggregates over its subtrees, or null if it is not augmented
+   */
+  public Augmentation<? super T, ?> augmentation() {
+    return augmentation;
   }
 
   /**
@@ -94,107 +513,781 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
   }
 
   /**
-   * This method rotates the binary tree on the left
+   * Removes a single occurrence of data from this tree, then restores the red-black properties.
+   * This takes O(log n) time in the worst case.
    *
-   * @param child - This intakes the child node for the rotation
-   * @param parent - This takes the parent node for the rotation
+   * @param data the value being removed
+   * @return true if one occurrence of data was removed, and false otherwise
+   * @throws NullPointerException if data argument is null
    */
-  private void rotateLeft(BSTNode<T> child, BSTNode<T> parent) {
-    //This takes in the grandparent value of the previous parent node
-    BSTNode<T> grandparent = parent.getUp();
-    // The parent and grandparent nodes are updated depending on the vacancies in the tree
-    if (grandparent == null) {
-      root = child;
-    } else if (grandparent.getLeft() != parent) {
-      grandparent.setRight(child);
+  @Override
+  public boolean remove(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Null values can't be removed.");
+    }
+    RBTNode<T> node = search(data);
+    if (node == null) {
+      return false;
+    }
+    if (node.count > 1) {
+      addCount(node, -1);
     } else {
-      grandparent.setLeft(child);
+      removeNode(node);
     }
-    //This sets the grandparent value to be above the child
-    child.setUp(grandparent);
+    return true;
+  }
 
-    // If the child is a parent duplicate, then it needs to be placed to the left side
-    /** if (child.getData().compareTo(parent.getData()) == 0) {
-     parent.setRight(child.getLeft());
-     if (child.getLeft() != null) {
-     child.getLeft().setUp(parent);
-     } */
-    // If there's no duplicates, then the rest of the nodes rotate leftwards
-    parent.setRight(child.getLeft());
-    if (child.getLeft() != null) {
-      child.getLeft().setUp(parent);
+  /**
+   * Removes every occurrence of data from this tree, taking O(log n) time per node that holds
+   * data, which is a single node in multiset mode.
+   *
+   * @param data the value being removed
+   * @return the number of values that were removed
+   * @throws NullPointerException if data argument is null
+   */
+  @Override
+  public int removeAll(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Null values can't be removed.");
     }
+    int removed = 0;
+    for (RBTNode<T> node = search(data); node != null; node = search(data)) {
+      removeNode(node);
+      removed += node.count;
+    }
+    return removed;
+  }
 
+  /**
+   * Changes the occurrence count of a node of this tree, and the sizes of its ancestors.
+   *
+   * @param node  a node of this tree
+   * @param delta the number of occurrences to add, or a negative number to take away
+   */
+  protected void addCount(RBTNode<T> node, int delta) {
+    node.count += delta;
+    growPath(node, delta);
+  }
 
-    // The parent node needs to be placed below the child
-    child.setLeft(parent);
-    parent.setUp(child);
+  /**
+   * Adds delta to the subtree sizes of node and its ancestors. An augmented tree recomputes the
+   * sizes with updateNode instead, which refreshes their aggregates as well.
+   *
+   * @param node  the lowest node whose subtree changed, or null
+   * @param delta the number of values the subtrees gained
+   */
+  private void growPath(RBTNode<T> node, int delta) {
+    if (augmentation != null) {
+      for (; node != null; node = node.getUp()) {
+        updateNode(node);
+      }
+      return;
+    }
+    for (; node != null; node = node.getUp()) {
+      node.size += delta;
+    }
   }
 
+  /**
+   * Unlinks the provided node from this tree. A node with two children is replaced by its in-order
+   * successor, which takes over the removed node's position and color. If a black node left the
+   * tree, the resulting double-black is repaired by ensureBlackProperty.
+   *
+   * @param node a node of this tree
+   */
+  protected void removeNode(RBTNode<T> node) {
+    if (node == pendingNode) {
+      settleSizes();
+    }
+    if (node == finger) {
+      finger = null;
+    }
+    if (node == last) {
+      last = null;
+    }
+    RBTNode<T> replacement;
+    RBTNode<T> replacementParent;
+    boolean removedRed = node.isRed();
+    if (node.getLeft() == null) {
+      replacement = node.getRight();
+      replacementParent = node.getUp();
+      transplant(node, replacement);
+    } else if (node.getRight() == null) {
+      replacement = node.getLeft();
+      replacementParent = node.getUp();
+      transplant(node, replacement);
+    } else {
+      RBTNode<T> successor = (RBTNode<T>) minimum(node.getRight());
+      removedRed = successor.isRed();
+      replacement = successor.getRight();
+      if (successor.getUp() == node) {
+        replacementParent = successor;
+      } else {
+        replacementParent = successor.getUp();
+        transplant(successor, replacement);
+        successor.setRight(node.getRight());
+        successor.getRight().setUp(successor);
+      }
+      transplant(node, successor);
+      successor.setLeft(node.getLeft());
+      successor.getLeft().setUp(successor);
+      successor.isRed = node.isRed();
+    }
+    // Detach the removed node completely so it can't be used to reach the tree anymore
+    node.up = node.left = node.right = null;
+    updateNode(node);
+    // Every node from the replacement's parent up to the root lost one value in its subtree
+    for (RBTNode<T> ancestor = replacementParent; ancestor != null; ancestor = ancestor.getUp()) {
+      updateNode(ancestor);
+    }
+    if (!removedRed) {
+      ensureBlackProperty(replacement, replacementParent);
+    }
+  }
+
+  /**
+   * Repairs a black height violation after a black node was removed. The provided node carries an
+   * extra black (it may be null, in which case its parent identifies its position). The repair
+   * either pushes the extra black up the tree by recoloring, or absorbs it using at most three
+   * rotations.
+   *
+   * @param node   the node carrying the extra black, or null
+   * @param parent the parent of node
+   */
+  protected void ensureBlackProperty(RBTNode<T> node, RBTNode<T> parent) {
+    while (node != root && !isRed(node)) {
+      // the sibling of a double-black node always exists, so a null node is never mistaken for
+      // the left child when it really is the right one
+      if (node == parent.getLeft()) {
+        RBTNode<T> sibling = parent.getRight();
+        // case 1: red sibling, rotate it above the parent to get a black sibling
+        if (sibling.isRed()) {
+          sibling.isRed = false;
+          parent.isRed = true;
+          rotate(sibling, parent);
+          sibling = parent.getRight();
+        }
+        if (!isRed(sibling.getLeft()) && !isRed(sibling.getRight())) {
+          // case 2: black sibling with black children, push the extra black up
+          sibling.isRed = true;
+          node = parent;
+          parent = node.getUp();
+        } else {
+          // case 3: only the inner nephew is red, rotate it into the outer position
+          if (!isRed(sibling.getRight())) {
+            sibling.getLeft().isRed = false;
+            sibling.isRed = true;
+            rotate(sibling.getLeft(), sibling);
+            sibling = parent.getRight();
+          }
+          // case 4: red outer nephew, a rotation around the parent absorbs the extra black
+          sibling.isRed = parent.isRed();
+          parent.isRed = false;
+          sibling.getRight().isRed = false;
+          rotate(sibling, parent);
+          node = (RBTNode<T>) root;
+        }
+      } else {
+        RBTNode<T> sibling = parent.getLeft();
+        // case 1: red sibling, rotate it above the parent to get a black sibling
+        if (sibling.isRed()) {
+          sibling.isRed = false;
+          parent.isRed = true;
+          rotate(sibling, parent);
+          sibling = parent.getLeft();
+        }
+        if (!isRed(sibling.getLeft()) && !isRed(sibling.getRight())) {
+          // case 2: black sibling with black children, push the extra black up
+          sibling.isRed = true;
+          node = parent;
+          parent = node.getUp();
+        } else {
+          // case 3: only the inner nephew is red, rotate it into the outer position
+          if (!isRed(sibling.getLeft())) {
+            sibling.getRight().isRed = false;
+            sibling.isRed = true;
+            rotate(sibling.getRight(), sibling);
+            sibling = parent.getLeft();
+          }
+          // case 4: red outer nephew, a rotation around the parent absorbs the extra black
+          sibling.isRed = parent.isRed();
+          parent.isRed = false;
+          sibling.getLeft().isRed = false;
+          rotate(sibling, parent);
+          node = (RBTNode<T>) root;
+        }
+      }
+    }
+    if (node != null) {
+      node.isRed = false;
+    }
+  }
+
+  /**
+   * @param node a node, or null for an empty subtree
+   * @return true if node is a red node, false if it is black or null
+   */
+  protected static boolean isRed(RBTNode<?> node) {
+    return node != null && node.isRed;
+  }
+
+  /**
+   * Creates an empty tree of the same kind and with the same ordering as this one. The trees
+   * returned by split and extractRange are created by this method.
+   *
+   * @return a new, empty tree
+   */
+  protected RedBlackTree<T> newEmptyTree() {
+    return new RedBlackTree<T>(comparator, multiset, augmentation);
+  }
+
+  /**
+   * Joins two trees around a pivot value in O(log n) time. Every value of left must be at most
+   * pivot and every value of right at least pivot. The pivot and all values of right are moved
+   * into left, which is returned, and right is left empty.
+   *
+   * @param left  the tree holding the smaller values, which receives the result
+   * @param pivot a value between the values of left and those of right
+   * @param right the tree holding the larger values, which is emptied
+   * @return left, now holding the values of both trees and the pivot
+   * @throws IllegalArgumentException if pivot is null, the trees are the same or ordered
+   *                                  differently, or the values are not ordered around pivot
+   */
+  public static <T extends Comparable<T>, R extends RedBlackTree<T>> R join(R left, T pivot,
+      R right) {
+    if (pivot == null) {
+      throw new IllegalArgumentException("Null values can't be inserted.");
+    }
+    RedBlackTree<T> target = left;
+    target.checkCombinable(right);
+    target.dropFinger();
+    right.dropFinger();
+    if (!target.isEmpty() && target.compareKey(target.maximum(target.root).data, pivot) > 0
+        || !right.isEmpty() && target.compareKey(pivot, right.minimum(right.root).data) > 0) {
+      throw new IllegalArgumentException("The pivot must lie between the values of the trees.");
+    }
+    RBTNode<T> node = new RBTNode<>(pivot);
+    if (target.multiset) {
+      // a multiset keeps one node per value, so the values equal to the pivot are folded together
+      RedBlackTree<T> source = right;
+      if (!source.isEmpty() && target.compareKey(pivot, source.minimum(source.root).data) == 0) {
+        RBTNode<T> first = (RBTNode<T>) source.minimum(source.root);
+        source.removeNode(first);
+        node.count += first.count;
+        target.updateNode(node);
+      }
+      if (!target.isEmpty() && target.compareKey(target.maximum(target.root).data, pivot) == 0) {
+        target.addCount((RBTNode<T>) target.maximum(target.root), node.count);
+        target.concat(target.getRoot(), source.getRoot(), blackHeight(source.getRoot()));
+        source.root = null;
+        return left;
+      }
+    }
+    target.link(target.getRoot(), blackHeight(target.getRoot()), node, right.getRoot(),
+        blackHeight(right.getRoot()));
+    right.root = null;
+    return left;
+  }
+
+  /**
+   * Moves every value of second into first, like first.addAll(second), using all cores of the
+   * common ForkJoinPool. Merging m values with n values takes O(m log(n/m + 1)) work, so one
+   * value is as cheap to merge as an insert, and two equally large trees are merged in linear
+   * work. Second is left empty.
+   *
+   * @param first  the tree that receives the result
+   * @param second the tree whose values are merged into first
+   * @return first
+   * @throws IllegalArgumentException if the trees are the same or ordered differently
+   */
+  public static <T extends Comparable<T>, R extends RedBlackTree<T>> R union(R first, R second) {
+    return combine(SetOperationTask.Operation.UNION, first, second);
+  }
+
+  /**
+   * Keeps the values of first that second contains, like first.retainAll(second), using all
+   * cores of the common ForkJoinPool and O(m log(n/m + 1)) work. A kept value keeps all its
+   * duplicates in first. Second is left empty.
+   *
+   * @param first  the tree that receives the result
+   * @param second the tree holding the values to keep
+   * @return first
+   * @throws IllegalArgumentException if the trees are the same or ordered differently
+   */
+  public static <T extends Comparable<T>, R extends RedBlackTree<T>> R intersection(R first,
+      R second) {
+    return combine(SetOperationTask.Operation.INTERSECTION, first, second);
+  }
 
   /**
-   * This method rotates the binary tree on the right
+   * Removes the values that second contains from first, like first.removeAll(second), using all
+   * cores of the common ForkJoinPool and O(m log(n/m + 1)) work. Every duplicate of a removed
+   * value is removed. Second is left empty.
    *
-   * @param child - This intakes the child node for the rotation
-   * @param parent - This takes the parent node for the rotation
+   * @param first  the tree that receives the result
+   * @param second the tree holding the values to remove
+   * @return first
+   * @throws IllegalArgumentException if the trees are the same or ordered differently
    */
-  private void rotateRight(BSTNode<T> child, BSTNode<T> parent) {
-    //This takes in the grandparent value of the previous parent node
-    BSTNode<T> newTree = parent.getUp();
-    // The parent and grandparent nodes are updated depending on the vacancies in the tree
-    if (newTree == null) {
-      root = child; }
-    else if (newTree.getLeft() != parent) {
-      newTree.setRight(child);
+  public static <T extends Comparable<T>, R extends RedBlackTree<T>> R difference(R first,
+      R second) {
+    return combine(SetOperationTask.Operation.DIFFERENCE, first, second);
+  }
+
+  /**
+   * Runs a SetOperationTask over the roots of two trees and stores its result in first.
+   */
+  private static <T extends Comparable<T>, R extends RedBlackTree<T>> R combine(
+      SetOperationTask.Operation operation, R first, R second) {
+    RedBlackTree<T> target = first;
+    RedBlackTree<T> source = second;
+    target.checkCombinable(source);
+    // nodes dropped by the operation keep links into the result, so a finger could pass as valid
+    target.dropFinger();
+    source.dropFinger();
+    SetOperationTask<T> task = new SetOperationTask<>(target, operation, target.getRoot(),
+        blackHeight(target.getRoot()), source.getRoot(), blackHeight(source.getRoot()));
+    target.root = blacken(task.invoke());
+    source.root = null;
+    return first;
+  }
+
+  /**
+   * Splits this tree in O(log n) time. The values before key stay in this tree, and every value
+   * equal to or after key is moved into the returned tree.
+   *
+   * @param key the first value of the returned tree
+   * @return a new tree of the same kind holding the values that are at least key
+   * @throws NullPointerException if key is null
+   */
+  public RedBlackTree<T> split(Comparable<T> key) {
+    if (key == null) {
+      throw new NullPointerException("Cannot split a tree at null.");
+    }
+    dropFinger();
+    Parts<T> parts = split(getRoot(), blackHeight(getRoot()), key, false);
+    RedBlackTree<T> after = newEmptyTree();
+    after.root = blacken(parts.right);
+    root = blacken(parts.left);
+    return after;
+  }
+
+  /**
+   * Removes every value from lo to hi, both inclusive, in O(log n) time, no matter how many values
+   * are in the range.
+   *
+   * @param lo the smallest value to remove, or null for no minimum
+   * @param hi the largest value to remove, or null for no maximum
+   * @return the number of values removed
+   */
+  public int removeRange(Comparable<T> lo, Comparable<T> hi) {
+    return extractRange(lo, hi).size();
+  }
+
+  /**
+   * Moves every value from lo to hi, both inclusive, into a new tree in O(log n) time. This tree
+   * keeps the values outside the range.
+   *
+   * @param lo the smallest value to move, or null for no minimum
+   * @param hi the largest value to move, or null for no maximum
+   * @return a new tree of the same kind holding the values of the range
+   */
+  public RedBlackTree<T> extractRange(Comparable<T> lo, Comparable<T> hi) {
+    RedBlackTree<T> extracted = newEmptyTree();
+    dropFinger();
+    // the bounds are not compared with each other, since they may be keys that only compare with
+    // values; when lo lies above hi the second split finds nothing between them
+    if (root == null) {
+      return extracted;
+    }
+    Parts<T> before = lo == null ? new Parts<>(null, 0, getRoot(), blackHeight(getRoot()))
+        : split(getRoot(), blackHeight(getRoot()), lo, false);
+    Parts<T> after = hi == null ? new Parts<>(before.right, before.rightHeight, null, 0)
+        : split(before.right, before.rightHeight, hi, true);
+    concat(before.left, after.right, after.rightHeight);
+    extracted.root = blacken(after.left);
+    return extracted;
+  }
+
+  /**
+   * Moves every value of another tree into this one in O(log n) time. The values of the two trees
+   * must not interleave: all values of other have to be at least the largest value of this tree,
+   * or at most its smallest value. The other tree is left empty.
+   *
+   * @param other the tree whose values are moved into this one
+   * @throws IllegalArgumentException if other is this tree or ordered differently, or if the
+   *                                  values of the trees interleave
+   */
+  public void appendAll(RedBlackTree<T> other) {
+    checkCombinable(other);
+    if (other.isEmpty()) {
+      return;
+    }
+    dropFinger();
+    other.dropFinger();
+    if (root == null) {
+      root = other.root;
+    } else if (compareKey(maximum(root).data, other.minimum(other.root).data) <= 0) {
+      foldSeam(this, other);
+      concat(getRoot(), other.getRoot(), blackHeight(other.getRoot()));
+    } else if (compareKey(other.maximum(other.root).data, minimum(root).data) <= 0) {
+      foldSeam(other, this);
+      concat(other.getRoot(), getRoot(), blackHeight(getRoot()));
     } else {
-      newTree.setLeft(child);
+      throw new IllegalArgumentException("The values of the trees interleave.");
     }
-    //This sets the grandparent value to be above the child
-    child.setUp(newTree);
+    other.root = null;
+  }
 
-    // If the child is a parent duplicate, then it needs to be placed to the left side
-    /** if (child.getData().compareTo(parent.getData()) == 0) {
-     parent.setLeft(child.getRight());
-     if (child.getRight() != null) {
-     child.getRight().setUp(parent);
-     } **/
-    // If there's no duplicates, then the rest of the nodes rotate rightwards
-    parent.setLeft(child.getRight());
-    if (child.getRight() != null) {
-      child.getRight().setUp(parent);
+  /**
+   * Before two multisets are concatenated, moves the occurrences of the smallest value of upper
+   * into the node of the largest value of lower when the two values are equal, so that the result
+   * keeps one node per value.
+   *
+   * @param lower the tree holding the smaller values
+   * @param upper the tree holding the larger values, which may be left empty
+   */
+  private static <T extends Comparable<T>> void foldSeam(RedBlackTree<T> lower,
+      RedBlackTree<T> upper) {
+    if (!lower.multiset || lower.isEmpty() || upper.isEmpty()) {
+      return;
+    }
+    RBTNode<T> last = (RBTNode<T>) lower.maximum(lower.root);
+    RBTNode<T> first = (RBTNode<T>) upper.minimum(upper.root);
+    if (lower.compareKey(last.data, first.data) == 0) {
+      upper.removeNode(first);
+      lower.addCount(last, first.count);
+    }
+  }
 
+  /**
+   * Checks that another tree can be combined with this one.
+   */
+  private void checkCombinable(RedBlackTree<T> other) {
+    if (other == this) {
+      throw new IllegalArgumentException("A tree can't be combined with itself.");
+    }
+    if (other.comparator != comparator) {
+      throw new IllegalArgumentException("The trees are ordered differently.");
+    }
+    if (other.multiset != multiset) {
+      throw new IllegalArgumentException("Only one of the trees counts duplicates.");
+    }
+    if (other.augmentation != augmentation) {
+      throw new IllegalArgumentException("The trees are augmented differently.");
     }
-    // The parent node needs to be placed below the child
-    child.setRight(parent);
-    parent.setUp(child);
   }
 
+  /**
+   * The two subtrees a subtree is split into, with their black heights.
+   */
+  static final class Parts<T> {
+    RBTNode<T> left;
+    int leftHeight;
+    RBTNode<T> right;
+    int rightHeight;
+
+    Parts(RBTNode<T> left, int leftHeight, RBTNode<T> right, int rightHeight) {
+      this.left = left;
+      this.leftHeight = leftHeight;
+      this.right = right;
+      this.rightHeight = rightHeight;
+    }
+  }
 
   /**
-   * This method was created to set the nodes to the correct colors for checking insertion
+   * Limits the work of a traversal that may run without a lock. A concurrent rotation can show
+   * such a traversal a cycle, so visiting more nodes, or going deeper, than a red-black tree of the
+   * expected size can have means the read is torn and has to run again under a lock.
+   */
+  public static final class TraversalBudget {
+    private int nodes;
+    private final int height;
+
+    /**
+     * @param size the number of nodes the tree had when the read started
+     */
+    public TraversalBudget(int size) {
+      this.nodes = size;
+      // a red-black tree with n nodes is at most 2 * log2(n + 1) levels high
+      this.height = 2 * (32 - Integer.numberOfLeadingZeros(size + 1));
+    }
+
+    /**
+     * Counts a visit to a node at the given depth, where the root is at depth 0.
+     *
+     * @throws ConcurrentModificationException if the traversal has visited more nodes, or gone
+     *                                         deeper, than the tree can have
+     */
+    public void visit(int depth) {
+      if (--nodes < 0 || depth >= height) {
+        throw new ConcurrentModificationException("The tree changed during the read");
+      }
+    }
+  }
+
+  /**
+   * Splits a detached subtree into the values before key and the rest. Every node on the search
+   * path for key is taken out, and the subtrees hanging off that path are joined back together on
+   * either side with the node as pivot. The joins on each side work their way up in black height,
+   * so their costs add up to O(log n).
    *
-   * @param data - data to check
+   * @param node          the root of the subtree, whose nodes are reused by the parts
+   * @param height        the black height of the subtree
+   * @param key           the value to split at
+   * @param equalGoesLeft whether values equal to key go to the left part
+   * @return the roots and black heights of the two parts, whose roots may be red
    */
-  private RBTNode<T> search(T data) {
-    return searchHelper((RBTNode<T>) root, data);
+  Parts<T> split(RBTNode<T> node, int height, Comparable<T> key, boolean equalGoesLeft) {
+    if (node == null) {
+      return new Parts<>(null, 0, null, 0);
+    }
+    RBTNode<T> left = node.getLeft();
+    RBTNode<T> right = node.getRight();
+    int childHeight = node.isRed() ? height : height - 1;
+    int c = compareKey(key, node.data);
+    RedBlackTree<T> work = newEmptyTree();
+    if (c > 0 || c == 0 && equalGoesLeft) {
+      // node and its left subtree go left, the right subtree is split further
+      Parts<T> parts = split(right, childHeight, key, equalGoesLeft);
+      parts.leftHeight = work.link(left, childHeight, node, parts.left, parts.leftHeight);
+      parts.left = work.getRoot();
+      return parts;
+    }
+    // node and its right subtree go right, the left subtree is split further
+    Parts<T> parts = split(left, childHeight, key, equalGoesLeft);
+    parts.rightHeight = work.link(parts.right, parts.rightHeight, node, right, childHeight);
+    parts.right = work.getRoot();
+    return parts;
   }
 
   /**
-   * Helper method to the search method
+   * Makes this tree hold the values of two detached subtrees, where every value of left is at
+   * most every value of right. The largest node of left is removed and used as the pivot to link
+   * the subtrees.
    *
-   * @param node - Find the given node
-   * @param data - data to be found
+   * @param left        the root of the subtree with the smaller values, or null
+   * @param right       the root of the subtree with the larger values, or null
+   * @param rightHeight the black height of right
+   * @return the black height of the resulting tree
    */
-  private RBTNode<T> searchHelper(RBTNode<T> node, T data) {
-    if (node == null || node.getData().equals(data)) {
-      return node;
+  int concat(RBTNode<T> left, RBTNode<T> right, int rightHeight) {
+    if (left == null || right == null) {
+      root = left == null ? blacken(right) : blacken(left);
+      return blackHeight(getRoot());
     }
-    //Uses compareTo method to find the correct data recursively
-    if (data.toString().compareTo(node.getData().toString()) < 0) {
-      return searchHelper(node.getLeft(), data);
+    root = blacken(left);
+    RBTNode<T> pivot = (RBTNode<T>) maximum(left);
+    removeNode(pivot);
+    return link(getRoot(), blackHeight(getRoot()), pivot, right, rightHeight);
+  }
+
+  /**
+   * Makes this tree hold the values of two detached subtrees and a pivot node between them, in
+   * time proportional to the difference of their black heights. The pivot is hung as a red node
+   * into the taller subtree, on the side facing the other subtree and at the depth where the black
+   * heights match, and the other subtree becomes its child. A red parent above the pivot is then
+   * repaired as after an insertion.
+   *
+   * @param left        the root of the subtree with the smaller values, or null
+   * @param leftHeight  the black height of left
+   * @param pivot       a detached node holding a value between those of left and right
+   * @param right       the root of the subtree with the larger values, or null
+   * @param rightHeight the black height of right
+   * @return the black height of the resulting tree
+   */
+  int link(RBTNode<T> left, int leftHeight, RBTNode<T> pivot, RBTNode<T> right,
+      int rightHeight) {
+    // both subtrees are made valid red-black trees on their own, with black roots
+    if (isRed(left)) {
+      left.isRed = false;
+      leftHeight++;
+    }
+    if (isRed(right)) {
+      right.isRed = false;
+      rightHeight++;
+    }
+    if (leftHeight == rightHeight) {
+      attach(pivot, left, right);
+      pivot.isRed = false;
+      pivot.up = null;
+      root = pivot;
+      return leftHeight + 1;
+    }
+    RBTNode<T> parent = null;
+    if (leftHeight > rightHeight) {
+      // follow the right spine of left down to the black node with the black height of right
+      RBTNode<T> node = left;
+      for (int height = leftHeight; isRed(node) || height > rightHeight; node = node.getRight()) {
+        height -= node.isRed() ? 0 : 1;
+        parent = node;
+      }
+      attach(pivot, node, right);
+      parent.right = pivot;
+      root = left;
     } else {
-      return searchHelper(node.getRight(), data);
+      // follow the left spine of right down to the black node with the black height of left
+      RBTNode<T> node = right;
+      for (int height = rightHeight; isRed(node) || height > leftHeight; node = node.getLeft()) {
+        height -= node.isRed() ? 0 : 1;
+        parent = node;
+      }
+      attach(pivot, left, node);
+      parent.left = pivot;
+      root = right;
     }
+    pivot.isRed = true;
+    pivot.up = parent;
+    ((RBTNode<T>) root).up = null;
+    for (RBTNode<T> ancestor = parent; ancestor != null; ancestor = ancestor.getUp()) {
+      updateNode(ancestor);
+    }
+    ensureRedProperty(pivot);
+    int height = Math.max(leftHeight, rightHeight);
+    if (isRed(getRoot())) {
+      getRoot().isRed = false;
+      height++;
+    }
+    return height;
+  }
+
+  /**
+   * Makes left and right the children of node and refreshes the node.
+   */
+  private void attach(RBTNode<T> node, RBTNode<T> left, RBTNode<T> right) {
+    node.left = left;
+    node.right = right;
+    if (left != null) {
+      left.up = node;
+    }
+    if (right != null) {
+      right.up = node;
+    }
+    updateNode(node);
+  }
+
+  /**
+   * Turns a detached subtree into a valid tree root, by unlinking it from its old parent and
+   * coloring it black.
+   *
+   * @return node
+   */
+  static <T> RBTNode<T> blacken(RBTNode<T> node) {
+    if (node != null) {
+      node.up = null;
+      node.isRed = false;
+    }
+    return node;
+  }
+
+  /**
+   * Counts the black nodes on the path from node down to a leaf, including node itself when it
+   * is black, in O(log n) time.
+   *
+   * @param node the root of a subtree, or null
+   * @return the black height of the subtree, or 0 when node is null
+   */
+  protected static int blackHeight(RBTNode<?> node) {
+    int height = 0;
+    for (; node != null; node = node.getLeft()) {
+      height += node.isRed() ? 0 : 1;
+    }
+    return height;
+  }
+
+  /**
+   * Replaces the contents of this tree with count values supplied in ascending order. The values
+   * are linked into a balanced tree in O(n) time, without any comparisons or rotations: every
+   * level is complete except possibly the deepest one, whose nodes are colored red. In multiset
+   * mode neighboring values are compared, so equal ones share one node.
+   *
+   * @param sorted an iterator returning at least count values in ascending order
+   * @param count  the number of values to take from sorted
+   */
+  protected void buildFromSorted(Iterator<? extends T> sorted, int count) {
+    dropFinger();
+    if (!multiset) {
+      root = buildSubtree(sorted, 0, 0, count - 1, redLevel(count));
+      return;
+    }
+    // a multiset first collects each run of equal values into one node
+    List<RBTNode<T>> nodes = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      T value = sorted.next();
+      RBTNode<T> last = nodes.isEmpty() ? null : nodes.get(nodes.size() - 1);
+      if (last != null && compareKey(last.data, value) == 0) {
+        last.count++;
+      } else {
+        nodes.add(new RBTNode<>(value));
+      }
+    }
+    relink(nodes);
+  }
+
+  /**
+   * Computes the depth whose nodes are red in a balanced tree of the provided size, which is the
+   * depth of its (possibly incomplete) deepest level.
+   */
+  private static int redLevel(int size) {
+    return 31 - Integer.numberOfLeadingZeros(size + 1);
+  }
+
+  /**
+   * Builds the balanced subtree holding the values at positions lo to hi of the sorted input,
+   * taking them from the iterator in order.
+   *
+   * @return the root of the subtree, or null if lo is greater than hi
+   */
+  private RBTNode<T> buildSubtree(Iterator<? extends T> sorted, int level, int lo, int hi,
+      int redLevel) {
+    if (hi < lo) {
+      return null;
+    }
+    int mid = (lo + hi) >>> 1;
+    RBTNode<T> left = buildSubtree(sorted, level + 1, lo, mid - 1, redLevel);
+    RBTNode<T> node = new RBTNode<>(sorted.next());
+    node.isRed = level == redLevel;
+    attach(node, left, buildSubtree(sorted, level + 1, mid + 1, hi, redLevel));
+    return node;
+  }
+
+  /**
+   * Makes this tree hold detached nodes that are in ascending order, by relinking them into a
+   * balanced tree like buildFromSorted does, without allocating new nodes.
+   *
+   * @param nodes the nodes in ascending order of their values
+   * @return the black height of the resulting tree
+   */
+  int relink(List<RBTNode<T>> nodes) {
+    int redLevel = redLevel(nodes.size());
+    root = relinkSubtree(nodes, 0, 0, nodes.size() - 1, redLevel);
+    if (root != null) {
+      root.up = null;
+    }
+    return redLevel;
+  }
+
+  private RBTNode<T> relinkSubtree(List<RBTNode<T>> nodes, int level, int lo, int hi,
+      int redLevel) {
+    if (hi < lo) {
+      return null;
+    }
+    int mid = (lo + hi) >>> 1;
+    RBTNode<T> node = nodes.get(mid);
+    attach(node, relinkSubtree(nodes, level + 1, lo, mid - 1, redLevel),
+        relinkSubtree(nodes, level + 1, mid + 1, hi, redLevel));
+    node.isRed = level == redLevel;
+    return node;
+  }
+
+  /**
+   * Finds a node of this tree that stores a value equal to data.
+   *
+   * @param data - data to be found
+   * @return the node holding data, or null if data is not stored in this tree
+   */
+  protected RBTNode<T> search(Comparable<T> data) {
+    return (RBTNode<T>) findNode(data);
   }
 
 }
@@ -0,0 +1,176 @@
+package Backend.src.main.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join task that combines two detached red-black subtrees with the join-based divide and
+ * conquer algorithm. The root of the second subtree splits the first one, the parts below and
+ * above the root are combined recursively, in parallel when they are large, and the results are
+ * joined back together. Combining m values into n takes O(m log(n/m + 1)) work and O(log^2 n)
+ * span. Small subproblems are instead flattened, merged and relinked into a balanced subtree in
+ * linear time, which is much cheaper than splitting and joining down to single nodes.
+ *
+ * The nodes of both subtrees are reused for the result, so the subtrees are consumed. The task
+ * returns the root of the result, which may be red, and its black height is available in height
+ * once the task has completed. Like other fork-join tasks, it is never serialized.
+ */
+@SuppressWarnings("serial")
+final class SetOperationTask<T extends Comparable<T>> extends RecursiveTask<RBTNode<T>> {
+
+  // subproblems with fewer values than this are not worth handing to another thread
+  private static final int FORK_THRESHOLD = 1 << 13;
+  // subproblems with at most this many values are merged sequentially
+  private static final int MERGE_THRESHOLD = 64;
+
+  /**
+   * The ways of combining two subtrees. They follow the Collection methods: a union keeps every
+   * value of both subtrees like addAll, an intersection keeps the values of the first subtree
+   * that the second one contains like retainAll, and a difference keeps the values of the first
+   * subtree that the second one does not contain like removeAll.
+   */
+  enum Operation {
+    UNION,
+    INTERSECTION,
+    DIFFERENCE
+  }
+
+  private final RedBlackTree<T> tree;
+  private final Operation operation;
+  private final RBTNode<T> first;
+  private final int firstHeight;
+  private final RBTNode<T> second;
+  private final int secondHeight;
+  // the black height of the result, set by compute
+  int height;
+
+  /**
+   * @param tree         the tree the result goes to, which orders the values and creates the
+   *                     work trees that the subtrees are joined in
+   * @param operation    how to combine the subtrees
+   * @param first        the root of the first subtree, or null
+   * @param firstHeight  the black height of first
+   * @param second       the root of the second subtree, or null
+   * @param secondHeight the black height of second
+   */
+  SetOperationTask(RedBlackTree<T> tree, Operation operation, RBTNode<T> first, int firstHeight,
+      RBTNode<T> second, int secondHeight) {
+    this.tree = tree;
+    this.operation = operation;
+    this.first = first;
+    this.firstHeight = firstHeight;
+    this.second = second;
+    this.secondHeight = secondHeight;
+  }
+
+  @Override
+  protected RBTNode<T> compute() {
+    if (first == null || second == null) {
+      RBTNode<T> result = operation == Operation.INTERSECTION ? null
+          : first == null && operation == Operation.UNION ? second : first;
+      height = result == first ? firstHeight : result == second ? secondHeight : 0;
+      return result;
+    }
+    int size = RedBlackTree.sizeOf(first) + RedBlackTree.sizeOf(second);
+    if (size <= MERGE_THRESHOLD) {
+      return merge();
+    }
+    boolean fork = size >= FORK_THRESHOLD;
+    RBTNode<T> pivot = second;
+    int childHeight = pivot.isRed() ? secondHeight : secondHeight - 1;
+    // the values equal to the pivot go right in a union of trees with duplicate nodes, and are
+    // set apart otherwise
+    boolean apart = operation != Operation.UNION || tree.isMultiset();
+    RedBlackTree.Parts<T> below = tree.split(first, firstHeight, pivot.data, false);
+    RedBlackTree.Parts<T> above = !apart ? below
+        : tree.split(below.right, below.rightHeight, pivot.data, true);
+    SetOperationTask<T> left = new SetOperationTask<>(tree, operation, below.left,
+        below.leftHeight, pivot.getLeft(), childHeight);
+    SetOperationTask<T> right = new SetOperationTask<>(tree, operation, above.right,
+        above.rightHeight, pivot.getRight(), childHeight);
+    RBTNode<T> leftRoot;
+    RBTNode<T> rightRoot;
+    if (fork) {
+      left.fork();
+      rightRoot = right.compute();
+      leftRoot = left.join();
+    } else {
+      leftRoot = left.compute();
+      rightRoot = right.compute();
+    }
+    RedBlackTree<T> work = tree.newEmptyTree();
+    if (operation == Operation.UNION) {
+      // in a multiset the pivot's node takes over the occurrences from the first subtree
+      pivot.count += apart ? RedBlackTree.sizeOf(above.left) : 0;
+      height = work.link(leftRoot, left.height, pivot, rightRoot, right.height);
+    } else if (operation == Operation.INTERSECTION) {
+      // the values of the first subtree that are equal to the pivot are kept
+      work.concat(leftRoot, above.left, above.leftHeight);
+      height = work.concat(work.getRoot(), rightRoot, right.height);
+    } else {
+      height = work.concat(leftRoot, rightRoot, right.height);
+    }
+    return work.getRoot();
+  }
+
+  /**
+   * Combines the subtrees by merging their nodes in ascending order, and relinks the nodes that
+   * are kept into a balanced subtree.
+   */
+  private RBTNode<T> merge() {
+    List<RBTNode<T>> firstNodes = inOrder(first, new ArrayList<>());
+    List<RBTNode<T>> secondNodes = inOrder(second, new ArrayList<>());
+    List<RBTNode<T>> kept = new ArrayList<>(firstNodes.size() + secondNodes.size());
+    int j = 0;
+    for (RBTNode<T> node : firstNodes) {
+      // skip, or for a union keep, the values of second that come before node
+      while (j < secondNodes.size() && tree.compareKey(secondNodes.get(j).data, node.data) < 0) {
+        if (operation == Operation.UNION) {
+          keep(kept, secondNodes.get(j));
+        }
+        j++;
+      }
+      boolean found = j < secondNodes.size()
+          && tree.compareKey(secondNodes.get(j).data, node.data) == 0;
+      if (operation == Operation.UNION || found == (operation == Operation.INTERSECTION)) {
+        keep(kept, node);
+      }
+    }
+    if (operation == Operation.UNION) {
+      for (RBTNode<T> node : secondNodes.subList(j, secondNodes.size())) {
+        keep(kept, node);
+      }
+    }
+    RedBlackTree<T> work = tree.newEmptyTree();
+    height = work.relink(kept);
+    return work.getRoot();
+  }
+
+  /**
+   * Adds a node to the nodes that are kept, or in a multiset, adds its occurrences to the last
+   * kept node when that holds the same value.
+   */
+  private void keep(List<RBTNode<T>> kept, RBTNode<T> node) {
+    RBTNode<T> last = kept.isEmpty() ? null : kept.get(kept.size() - 1);
+    if (tree.isMultiset() && last != null && tree.compareKey(last.data, node.data) == 0) {
+      last.count += node.count;
+    } else {
+      kept.add(node);
+    }
+  }
+
+  /**
+   * Adds the nodes of a subtree to a list in ascending order.
+   *
+   * @return nodes
+   */
+  private static <T> List<RBTNode<T>> inOrder(RBTNode<T> node, List<RBTNode<T>> nodes) {
+    if (node != null) {
+      inOrder(node.getLeft(), nodes);
+      nodes.add(node);
+      inOrder(node.getRight(), nodes);
+    }
+    return nodes;
+  }
+}
@@ -13,6 +13,23 @@ public interface SortedCollection<T extends Comparable<T>> {
    */
   public void insert(T data) throws NullPointerException;
 
+  /**
+   * Removes a single occurrence of data from the sorted collection.
+   * @param data the value being removed
+   * @return true if one occurrence of data was removed, and false if the
+   * collection did not contain data
+   * @throws NullPointerException if data argument is null
+   */
+  public boolean remove(T data) throws NullPointerException;
+
+  /**
+   * Removes every occurrence of data from the sorted collection.
+   * @param data the value being removed
+   * @return the number of values that were removed
+   * @throws NullPointerException if data argument is null
+   */
+  public int removeAll(T data) throws NullPointerException;
+
   /**
    * Check whether data is stored in the tree.
    * @param data the value to check for in the collection
@@ -1,33 +1,164 @@
-package com.example.rbt.model;
+package Backend.src.main.model;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
-public class Task implements Comparable<Task> {
-    private String name;
-    private LocalDateTime dueDate;
-    private int priority; // 1 = high, 5 = low
-    private String description;
+public final class Task implements Comparable<Task> {
+    private final String name;
+    private final LocalDateTime dueDate;
+    private final int priority; // 1 = high, 5 = low
+    private final String description;
+    // the window the task occupies, which ends at its due date
+    private final LocalDateTime start;
+    // the due date in epoch seconds and the priority packed into one number, so that most
+    // comparisons in a tree are a single long comparison
+    private final long sortKey;
 
     public Task(String name, LocalDateTime dueDate, int priority, String description) {
+        this(name, dueDate, dueDate, priority, description);
+    }
+
+    /**
+     * Creates a task that occupies the time window from start to its due date, both inclusive.
+     * Every field that compareTo reads is checked here, so comparing tasks never fails, and a
+     * tree of tasks can't be left half updated by a task that can't be ordered.
+     *
+     * @throws IllegalArgumentException if the name, start or due date is missing, or if the
+     *                                  window ends before it starts
+     */
+    public Task(String name, LocalDateTime start, LocalDateTime dueDate, int priority,
+            String description) {
+        if (name == null || start == null || dueDate == null) {
+            throw new IllegalArgumentException("A task needs a name, a start and a due date.");
+        }
+        if (dueDate.isBefore(start)) {
+            throw new IllegalArgumentException("A task can't end before it starts.");
+        }
         this.name = name;
+        this.start = start;
         this.dueDate = dueDate;
         this.priority = priority;
         this.description = description;
+        this.sortKey = sortKey(dueDate, priority);
+    }
+
+    /**
+     * Packs the due date in epoch seconds (UTC) into the upper 56 bits and the priority, limited
+     * to the range of a byte, into the lower 8 bits. Every LocalDateTime fits, and both parts keep
+     * their order, so comparing two keys orders tasks by due second and then by priority.
+     */
+    static long sortKey(LocalDateTime dueDate, int priority) {
+        int clamped = Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, priority));
+        return dueDate.toEpochSecond(ZoneOffset.UTC) << 8 | (clamped - Byte.MIN_VALUE);
+    }
+
+    /**
+     * Returns a key that sorts after every task due in an earlier second than time and before
+     * every task due in the same second or later. Within one second tasks are ordered by priority
+     * before their fractions of a second, so a whole second is the finest boundary between due and
+     * pending tasks that a tree of tasks can be split at.
+     *
+     * @param time the time whose second the key stands for
+     * @return the key, which never compares equal to a task
+     */
+    public static Comparable<Task> dueFrom(LocalDateTime time) {
+        long key = sortKey(time, Byte.MIN_VALUE);
+        return task -> key <= task.sortKey ? -1 : 1;
+    }
+
+    /**
+     * Returns a key that sorts before every task of the given priority that is due in the second
+     * of time, and after the tasks of that second with smaller priorities and every task due
+     * earlier. The tasks of one priority are contiguous within a second, so this is where they
+     * start.
+     *
+     * @param time     the time whose second the key stands for
+     * @param priority the priority of the tasks
+     * @return the key, which never compares equal to a task
+     */
+    public static Comparable<Task> dueFrom(LocalDateTime time, int priority) {
+        long key = sortKey(time, priority);
+        return task -> {
+            int cmp = Long.compare(key, task.sortKey);
+            if (cmp == 0) {
+                cmp = Integer.compare(priority, task.priority);
+            }
+            return cmp != 0 ? cmp : -1;
+        };
+    }
+
+    /**
+     * Returns a key that sorts after every task of the given priority that is due in the second
+     * of time but not after time, and before the later tasks of that priority. Within one second
+     * and priority tasks are ordered by their due date, so the key ends the due tasks of that
+     * priority; the tasks of smaller priorities in that second sort before it.
+     *
+     * @param time     the time whose due tasks the key ends
+     * @param priority the priority of the tasks
+     * @return the key, which never compares equal to a task
+     */
+    public static Comparable<Task> dueBy(LocalDateTime time, int priority) {
+        long key = sortKey(time, priority);
+        int nano = time.getNano();
+        return task -> {
+            int cmp = Long.compare(key, task.sortKey);
+            if (cmp == 0) {
+                cmp = Integer.compare(priority, task.priority);
+            }
+            return cmp != 0 ? cmp : nano < task.dueDate.getNano() ? -1 : 1;
+        };
     }
 
     public String getName() { return name; }
     public LocalDateTime getDueDate() { return dueDate; }
     public int getPriority() { return priority; }
     public String getDescription() { return description; }
+    public LocalDateTime getStart() { return start; }
+
+    // the window in epoch milliseconds, which is how an IntervalTree of tasks stores it
+    public long getStartMillis() { return toMillis(start); }
+    public long getEndMillis() { return toMillis(dueDate); }
+
+    /**
+     * @return true if the window of this task overlaps the window from start to end
+     */
+    public boolean overlaps(LocalDateTime start, LocalDateTime end) {
+        return !this.start.isAfter(end) && !dueDate.isBefore(start);
+    }
+
+    /**
+     * Converts a time of day to the epoch milliseconds used by task interval trees, reading it as
+     * UTC.
+     */
+    public static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * @return an empty interval tree that orders tasks by the start of their window and finds
+     *         the tasks whose windows overlap a time window
+     */
+    public static IntervalTree<Task> windowTree() {
+        return new IntervalTree<>(Task::getStartMillis, Task::getEndMillis);
+    }
 
     @Override
     public int compareTo(Task other) {
-        // Sort by due date first, then priority, then name
-        int cmp = this.dueDate.compareTo(other.dueDate);
+        // Sort by due second first, then priority, which the packed keys decide on their own
+        int cmp = Long.compare(this.sortKey, other.sortKey);
+        if (cmp != 0) {
+            return cmp;
+        }
+        // then by priorities outside the packed range, fractions of a second, name and the start
+        // of the window
+        cmp = Integer.compare(this.priority, other.priority);
         if (cmp == 0) {
-            cmp = Integer.compare(this.priority, other.priority);
+            cmp = Integer.compare(this.dueDate.getNano(), other.dueDate.getNano());
             if (cmp == 0) {
                 cmp = this.name.compareTo(other.name);
+                if (cmp == 0) {
+                    cmp = this.start.compareTo(other.start);
+                }
             }
         }
         return cmp;
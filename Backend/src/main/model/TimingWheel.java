@@ -0,0 +1,206 @@
+package Backend.src.main.model;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel that hands out values when the clock reaches the tick they are due
+ * at. Level 0 has one slot per tick, and every slot of level l spans all the slots of level
+ * l - 1. A value is put into the lowest level that reaches its tick, and when the clock enters the
+ * span of a slot of a higher level, the values of that slot move down, so each value moves at
+ * most once per level. Adding a value and advancing the clock by one tick take O(1) time, which
+ * makes the wheel a cheaper source of due values than a sorted tree when most values are due
+ * soon. Values due later than the horizon, slots^levels ticks ahead, don't fit into the wheel and
+ * have to wait elsewhere. The wheel is not thread-safe.
+ *
+ * @param <T> the type of the values
+ */
+public class TimingWheel<T> {
+
+  // a value waiting in a slot, linked to the next value of the same slot
+  private static final class Entry<T> {
+    final T value;
+    final long tick;
+    Entry<T> next;
+
+    Entry(T value, long tick) {
+      this.value = value;
+      this.tick = tick;
+    }
+  }
+
+  private final int slotBits;
+  private final int mask;
+  private final Entry<T>[][] slots;
+  // the first tick that has not been handed out yet
+  private long nextTick;
+  private int size;
+
+  /**
+   * Creates an empty wheel.
+   *
+   * @param slotBits  the number of slots of each level is 2^slotBits
+   * @param levels    the number of levels
+   * @param firstTick the first tick to hand out values for
+   * @throws IllegalArgumentException if there are no slots or levels, or if the horizon exceeds
+   *                                  2^62 ticks
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public TimingWheel(int slotBits, int levels, long firstTick) {
+    if (slotBits < 1 || levels < 1 || (long) slotBits * levels > 62) {
+      throw new IllegalArgumentException("A wheel needs 1 to 62 bits of slots over all levels.");
+    }
+    this.slotBits = slotBits;
+    this.mask = (1 << slotBits) - 1;
+    this.slots = (Entry<T>[][]) new Entry[levels][1 << slotBits];
+    this.nextTick = firstTick;
+  }
+
+  /**
+   * @return the first tick whose values have not been handed out yet
+   */
+  public long nextTick() {
+    return nextTick;
+  }
+
+  /**
+   * @return the last tick that a value can be due at to be added
+   */
+  public long horizon() {
+    return nextTick + (1L << slotBits * slots.length) - 1;
+  }
+
+  /**
+   * @return the number of values in the wheel
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return true if the wheel holds no values
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns the first tick that advance has work for, either because values are due at it or
+   * because the values of a slot of a higher level move down at it. Advancing the clock to any
+   * tick before it hands out nothing, so a caller can sleep until it. Takes O(slots * levels)
+   * time.
+   *
+   * @return the first tick with work for advance, or Long.MAX_VALUE if the wheel is empty
+   */
+  public long nextBusyTick() {
+    if (size == 0) {
+      return Long.MAX_VALUE;
+    }
+    long busy = Long.MAX_VALUE;
+    for (int level = 0; level < slots.length; level++) {
+      int shift = slotBits * level;
+      // the clock enters the spans of the slots of this level in turn, starting with the first
+      // span that starts at or after the next tick; every value of the level is due within them
+      long first = Math.ceilDiv(nextTick, 1L << shift) << shift;
+      for (int i = 0; i <= mask; i++) {
+        long tick = first + ((long) i << shift);
+        if (tick >= busy) {
+          break;
+        }
+        if (slots[level][(int) (tick >> shift) & mask] != null) {
+          busy = tick;
+          break;
+        }
+      }
+    }
+    return busy;
+  }
+
+  /**
+   * Adds a value that is due at a tick. A value due at a tick that was already handed out is due
+   * at the next tick.
+   *
+   * @param value the value to add
+   * @param tick  the tick the value is due at
+   * @return true if the value was added, or false if its tick lies beyond the horizon
+   */
+  public boolean add(T value, long tick) {
+    if (tick > horizon()) {
+      return false;
+    }
+    place(new Entry<>(value, Math.max(tick, nextTick)));
+    size++;
+    return true;
+  }
+
+  /**
+   * Advances the clock to the end of a tick, and passes every value that is due by then to
+   * action, in order of their ticks. Each tick that passes takes O(1) time besides the values it
+   * hands out; the ticks of an empty wheel are skipped at once.
+   *
+   * @param tick   the last tick to hand out values for
+   * @param action the action to run for every due value
+   */
+  public void advance(long tick, Consumer<? super T> action) {
+    while (nextTick <= tick) {
+      if (size == 0) {
+        nextTick = tick + 1;
+        return;
+      }
+      // a slot of a higher level is emptied when the clock enters its span, from the top down, so
+      // that its values reach level 0 before this tick is handed out
+      for (int level = slots.length - 1; level > 0; level--) {
+        if ((nextTick & (1L << slotBits * level) - 1) == 0) {
+          int slot = (int) (nextTick >> slotBits * level) & mask;
+          Entry<T> entry = slots[level][slot];
+          slots[level][slot] = null;
+          while (entry != null) {
+            Entry<T> next = entry.next;
+            place(entry);
+            entry = next;
+          }
+        }
+      }
+      int slot = (int) nextTick & mask;
+      Entry<T> entry = slots[0][slot];
+      slots[0][slot] = null;
+      nextTick++;
+      for (; entry != null; entry = entry.next) {
+        size--;
+        action.accept(entry.value);
+      }
+    }
+  }
+
+  /**
+   * Removes every value from the wheel, passing each one to action in no particular order.
+   *
+   * @param action the action to run for every value
+   */
+  public void drain(Consumer<? super T> action) {
+    for (Entry<T>[] level : slots) {
+      for (int slot = 0; slot < level.length; slot++) {
+        for (Entry<T> entry = level[slot]; entry != null; entry = entry.next) {
+          action.accept(entry.value);
+        }
+        level[slot] = null;
+      }
+    }
+    size = 0;
+  }
+
+  /**
+   * Puts an entry into the lowest level that reaches its tick from the next tick. The entry is
+   * then moved down exactly when the clock enters the span of its slot, which is at or before its
+   * tick.
+   */
+  private void place(Entry<T> entry) {
+    long delta = entry.tick - nextTick;
+    int level = 0;
+    while (level < slots.length - 1 && delta >= 1L << slotBits * (level + 1)) {
+      level++;
+    }
+    int slot = (int) (entry.tick >> slotBits * level) & mask;
+    entry.next = slots[level][slot];
+    slots[level][slot] = entry;
+  }
+}
@@ -0,0 +1,330 @@
+package Backend.src.main.model;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Read-only view of the values of an IterableRedBlackTree that lie between two bounds. Unlike the
+ * bounds set through setIteratorMin and setIteratorMax, the bounds of a view belong to the view
+ * and never change, so any number of views over different ranges of the same tree can be read at
+ * the same time. A view stores no values of its own and always reflects the current contents of
+ * the tree; its queries take O(log n) time.
+ *
+ * <p>A bound may be any key that orders itself against the values of the tree, such as
+ * Task.dueFrom, so it is only ever compared against stored values and never against another
+ * bound. Narrowing a view therefore keeps the bounds of the view it was made from instead of
+ * picking the tighter of the two, and each level of narrowing adds O(log n) to the queries.
+ */
+public final class TreeRangeView<T extends Comparable<T>> implements Iterable<T> {
+
+  private final IterableRedBlackTree<T> tree;
+  // the bounds of the view, where a null bound means the view is unbounded on that side
+  private final Comparable<T> lo;
+  private final boolean loInclusive;
+  private final Comparable<T> hi;
+  private final boolean hiInclusive;
+  // the view this one was narrowed from, whose bounds also apply, or null
+  private final TreeRangeView<T> outer;
+
+  /**
+   * @param tree        the tree to view
+   * @param lo          the lower bound, or null for no lower bound
+   * @param loInclusive whether values equal to lo are part of the view
+   * @param hi          the upper bound, or null for no upper bound
+   * @param hiInclusive whether values equal to hi are part of the view
+   */
+  TreeRangeView(IterableRedBlackTree<T> tree, Comparable<T> lo, boolean loInclusive,
+      Comparable<T> hi, boolean hiInclusive) {
+    this(tree, lo, loInclusive, hi, hiInclusive, null);
+  }
+
+  private TreeRangeView(IterableRedBlackTree<T> tree, Comparable<T> lo, boolean loInclusive,
+      Comparable<T> hi, boolean hiInclusive, TreeRangeView<T> outer) {
+    this.tree = tree;
+    this.lo = lo;
+    this.loInclusive = loInclusive;
+    this.hi = hi;
+    this.hiInclusive = hiInclusive;
+    this.outer = outer;
+  }
+
+  /**
+   * @return the number of values in this view, counting every occurrence of duplicates
+   */
+  public int size() {
+    return Math.max(0, endPosition() - startPosition());
+  }
+
+  /**
+   * @return true if no value of the tree lies in this view
+   */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * @param key the value to look for
+   * @return true if key lies in this view and the tree contains it
+   */
+  public boolean contains(Comparable<T> key) {
+    if (key == null) {
+      return false;
+    }
+    BSTNode<T> node = IterableRedBlackTree.ceilingNode(tree.getRoot(), key, true,
+        tree.comparator);
+    return node != null && tree.compareKey(key, node.data) == 0 && inRange(node.data);
+  }
+
+  /**
+   * @param value the value to check
+   * @return true if value lies between the bounds of this view
+   */
+  public boolean inRange(T value) {
+    return !belowLow(value) && !aboveHigh(value);
+  }
+
+  /**
+   * @return the smallest value of this view
+   * @throws NoSuchElementException if the view is empty
+   */
+  public T first() {
+    BSTNode<T> node = lowestNode();
+    if (node == null || aboveHigh(node.data)) {
+      throw new NoSuchElementException("The view is empty.");
+    }
+    return node.data;
+  }
+
+  /**
+   * @return the largest value of this view
+   * @throws NoSuchElementException if the view is empty
+   */
+  public T last() {
+    BSTNode<T> node = highestNode();
+    if (node == null || belowLow(node.data)) {
+      throw new NoSuchElementException("The view is empty.");
+    }
+    return node.data;
+  }
+
+  /**
+   * @param key the value to look up
+   * @return the largest value of this view that is at most key, or null if there is none
+   */
+  public T floor(Comparable<T> key) {
+    return below(key, true);
+  }
+
+  /**
+   * @param key the value to look up
+   * @return the largest value of this view that is less than key, or null if there is none
+   */
+  public T lower(Comparable<T> key) {
+    return below(key, false);
+  }
+
+  /**
+   * @param key the value to look up
+   * @return the smallest value of this view that is at least key, or null if there is none
+   */
+  public T ceiling(Comparable<T> key) {
+    return above(key, true);
+  }
+
+  /**
+   * @param key the value to look up
+   * @return the smallest value of this view that is greater than key, or null if there is none
+   */
+  public T higher(Comparable<T> key) {
+    return above(key, false);
+  }
+
+  /**
+   * Returns a view of the values of this view from from to to. The bounds of the new view are
+   * intersected with the bounds of this view, so it never reaches outside of it.
+   *
+   * @param from          the lower bound of the new view
+   * @param fromInclusive whether values equal to from are part of the new view
+   * @param to            the upper bound of the new view
+   * @param toInclusive   whether values equal to to are part of the new view
+   * @return the narrower view
+   */
+  public TreeRangeView<T> subSet(Comparable<T> from, boolean fromInclusive, Comparable<T> to,
+      boolean toInclusive) {
+    return headSet(to, toInclusive).tailSet(from, fromInclusive);
+  }
+
+  /**
+   * Returns a view of the values of this view that are less than (or equal to, if inclusive is
+   * true) to.
+   */
+  public TreeRangeView<T> headSet(Comparable<T> to, boolean inclusive) {
+    if (to == null) {
+      throw new NullPointerException("The bound can't be null.");
+    }
+    if (hi == null && outer == null) {
+      return new TreeRangeView<>(tree, lo, loInclusive, to, inclusive);
+    }
+    return new TreeRangeView<>(tree, null, false, to, inclusive, this);
+  }
+
+  /**
+   * Returns a view of the values of this view that are greater than (or equal to, if inclusive
+   * is true) from.
+   */
+  public TreeRangeView<T> tailSet(Comparable<T> from, boolean inclusive) {
+    if (from == null) {
+      throw new NullPointerException("The bound can't be null.");
+    }
+    if (lo == null && outer == null) {
+      return new TreeRangeView<>(tree, from, inclusive, hi, hiInclusive);
+    }
+    return new TreeRangeView<>(tree, from, inclusive, null, false, this);
+  }
+
+  /**
+   * @return an iterator over the values of this view in ascending order
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return new IterableRedBlackTree.RBTIterator<>(lowestNode(), highestNode(), false,
+        tree.comparator);
+  }
+
+  /**
+   * @return an iterator over the values of this view in descending order
+   */
+  public Iterator<T> descendingIterator() {
+    return new IterableRedBlackTree.RBTIterator<>(highestNode(), lowestNode(), true,
+        tree.comparator);
+  }
+
+  /**
+   * @return a spliterator over the values of this view that knows its exact size
+   */
+  @Override
+  public Spliterator<T> spliterator() {
+    int start = startPosition();
+    return new IterableRedBlackTree.RBTSpliterator<>(tree.getRoot(), start,
+        Math.max(start, endPosition()), tree.comparator);
+  }
+
+  /**
+   * @return a sequential stream over the values of this view in ascending order
+   */
+  public Stream<T> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  /**
+   * @return a parallel stream over the values of this view
+   */
+  public Stream<T> parallelStream() {
+    return StreamSupport.stream(spliterator(), true);
+  }
+
+  // the position of the first value of the view in the sorted order of the tree
+  private int startPosition() {
+    int start = outer == null ? 0 : outer.startPosition();
+    if (lo == null) {
+      return start;
+    }
+    return Math.max(start, loInclusive ? tree.rank(lo) : tree.countAtMost(lo));
+  }
+
+  // the position after the last value of the view in the sorted order of the tree
+  private int endPosition() {
+    int end = outer == null ? tree.size() : outer.endPosition();
+    if (hi == null) {
+      return end;
+    }
+    return Math.min(end, hiInclusive ? tree.countAtMost(hi) : tree.rank(hi));
+  }
+
+  // the leftmost node of the tree that is not below the lower bounds
+  private BSTNode<T> lowestNode() {
+    BSTNode<T> node = IterableRedBlackTree.ceilingNode(tree.getRoot(), lo,
+        lo == null || loInclusive, tree.comparator);
+    // when the node is below a bound of the outer view, that bound is the tighter one
+    return node != null && outer != null && outer.belowLow(node.data) ? outer.lowestNode()
+        : node;
+  }
+
+  // the rightmost node of the tree that is not above the upper bounds
+  private BSTNode<T> highestNode() {
+    BSTNode<T> node = IterableRedBlackTree.floorNode(tree.getRoot(), hi,
+        hi == null || hiInclusive, tree.comparator);
+    return node != null && outer != null && outer.aboveHigh(node.data) ? outer.highestNode()
+        : node;
+  }
+
+  /**
+   * Finds the largest value of this view that is less than (or equal to, if inclusive is true)
+   * key. When the value found in the tree lies above the view, key lies above it too, so the
+   * answer is the largest value of the view instead.
+   */
+  private T below(Comparable<T> key, boolean inclusive) {
+    if (key == null) {
+      throw new NullPointerException("The key can't be null.");
+    }
+    BSTNode<T> node = IterableRedBlackTree.floorNode(tree.getRoot(), key, inclusive,
+        tree.comparator);
+    if (node != null && aboveHigh(node.data)) {
+      node = highestNode();
+    }
+    return node == null || belowLow(node.data) ? null : node.data;
+  }
+
+  /**
+   * Finds the smallest value of this view that is greater than (or equal to, if inclusive is
+   * true) key. When the value found in the tree lies below the view, key lies below it too, so
+   * the answer is the smallest value of the view instead.
+   */
+  private T above(Comparable<T> key, boolean inclusive) {
+    if (key == null) {
+      throw new NullPointerException("The key can't be null.");
+    }
+    BSTNode<T> node = IterableRedBlackTree.ceilingNode(tree.getRoot(), key, inclusive,
+        tree.comparator);
+    if (node != null && belowLow(node.data)) {
+      node = lowestNode();
+    }
+    return node == null || aboveHigh(node.data) ? null : node.data;
+  }
+
+  // whether value lies below a lower bound of this view or of the views it was narrowed from
+  private boolean belowLow(T value) {
+    if (lo != null) {
+      int cmp = compare(value, lo);
+      if (cmp < 0 || cmp == 0 && !loInclusive) {
+        return true;
+      }
+    }
+    return outer != null && outer.belowLow(value);
+  }
+
+  // whether value lies above an upper bound of this view or of the views it was narrowed from
+  private boolean aboveHigh(T value) {
+    if (hi != null) {
+      int cmp = compare(value, hi);
+      if (cmp > 0 || cmp == 0 && !hiInclusive) {
+        return true;
+      }
+    }
+    return outer != null && outer.aboveHigh(value);
+  }
+
+  /**
+   * Compares a stored value against a bound through the bound's own compareTo, as
+   * IterableRedBlackTree.ceilingNode does, so the bound doesn't need to be a value of type T
+   * unless the tree has a comparator.
+   */
+  @SuppressWarnings("unchecked")
+  private int compare(T value, Comparable<T> bound) {
+    return tree.comparator == null ? -bound.compareTo(value)
+        : tree.comparator.compare(value, (T) bound);
+  }
+}
@@ -0,0 +1,233 @@
+package Backend.src.main.model;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class reads and writes snapshots of a collection of String values. A snapshot file holds
+ * the values in ascending order:
+ *
+ * <pre>
+ *   int  magic ("RBTS")
+ *   int  format version
+ *   int  number of values
+ *   long sequence number of the last logged mutation the snapshot covers
+ *   then, for every value: int length in bytes, followed by the UTF-8 bytes of the value
+ * </pre>
+ *
+ * All integers are big-endian. A snapshot is written to a temporary file that is forced to disk
+ * and then moved over the previous snapshot, so a crash never leaves a partial snapshot behind.
+ * Loading maps the file into memory, and an empty RedBlackTree is rebuilt in O(n) straight from
+ * the mapped values instead of inserting them one by one.
+ */
+public final class TreeSnapshot {
+
+  private static final int MAGIC = 0x52425453;
+  private static final int VERSION = 2;
+  private static final int HEADER_BYTES = 20;
+  private static final int BUFFER_BYTES = 1 << 20;
+  private static final ValueLayout.OfInt INT =
+      ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+  private TreeSnapshot() {
+  }
+
+  /**
+   * Writes the values returned by iterating over the provided collection to a snapshot file,
+   * replacing any previous snapshot at that path.
+   *
+   * @param values the values to write, which must be iterated in ascending order
+   * @param file   the path of the snapshot
+   * @return the number of values written
+   * @throws IOException if the snapshot can't be written
+   */
+  public static int write(Iterable<String> values, Path file) throws IOException {
+    return write(values, file, 0);
+  }
+
+  /**
+   * Writes the values returned by iterating over the provided collection to a snapshot file,
+   * recording the sequence number of the last logged mutation they include.
+   *
+   * @param values   the values to write, which must be iterated in ascending order
+   * @param file     the path of the snapshot
+   * @param sequence the last log sequence number covered by the values
+   * @return the number of values written
+   * @throws IOException if the snapshot can't be written
+   */
+  public static int write(Iterable<String> values, Path file, long sequence) throws IOException {
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    int count = 0;
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+      // the count is patched in once every value has been written
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(0).putLong(sequence);
+      for (String value : values) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (buffer.remaining() < Integer.BYTES + bytes.length) {
+          flush(channel, buffer);
+        }
+        if (Integer.BYTES + bytes.length > buffer.capacity()) {
+          // values larger than the buffer bypass it
+          buffer.putInt(bytes.length);
+          flush(channel, buffer);
+          writeFully(channel, ByteBuffer.wrap(bytes));
+        } else {
+          buffer.putInt(bytes.length).put(bytes);
+        }
+        count++;
+      }
+      flush(channel, buffer);
+      channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, count), 8);
+      channel.force(true);
+    }
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    return count;
+  }
+
+  /**
+   * Writes the contents of the buffer to the channel and clears the buffer.
+   */
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    writeFully(channel, buffer);
+    buffer.clear();
+  }
+
+  /**
+   * Writes every remaining byte of the buffer to the channel.
+   */
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Loads the values of a snapshot file into a collection. When the collection is an empty
+   * RedBlackTree or VersionedRedBlackTree, the tree is built directly from the mapped file in O(n)
+   * time; any other collection receives the values through insert.
+   *
+   * @param file the path of the snapshot
+   * @param into the collection that receives the values
+   * @return the number of values loaded
+   * @throws IOException if the file can't be read or is not a valid snapshot
+   */
+  public static int read(Path file, SortedCollection<String> into) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        Arena arena = Arena.ofConfined()) {
+      MemorySegment mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+      if (mapped.byteSize() < HEADER_BYTES || mapped.get(INT, 0) != MAGIC) {
+        throw new IOException("Not a tree snapshot: " + file);
+      }
+      int version = mapped.get(INT, 4);
+      if (version != VERSION) {
+        throw new IOException("Unsupported snapshot version " + version + ": " + file);
+      }
+      int count = mapped.get(INT, 8);
+      ValueReader values = new ValueReader(mapped, HEADER_BYTES, count, file);
+      try {
+        if (into instanceof RedBlackTree<String> tree && tree.isEmpty()) {
+          tree.buildFromSorted(values, count);
+        } else if (into instanceof VersionedRedBlackTree<String> tree && tree.isEmpty()) {
+          tree.buildFromSorted(values);
+        } else {
+          while (values.hasNext()) {
+            into.insert(values.next());
+          }
+        }
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Reads the sequence number of the last logged mutation covered by a snapshot file.
+   *
+   * @param file the path of the snapshot
+   * @return the last log sequence number covered by the snapshot
+   * @throws IOException if the file can't be read or is not a valid snapshot
+   */
+  public static long sequence(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // a short file ends with a partial header, which is reported below
+      }
+      if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+        throw new IOException("Not a tree snapshot: " + file);
+      }
+      if (header.getInt(4) != VERSION) {
+        throw new IOException("Unsupported snapshot version " + header.getInt(4) + ": " + file);
+      }
+      return header.getLong(12);
+    }
+  }
+
+  /**
+   * Iterator that decodes the values of a mapped snapshot one at a time, checking that they are
+   * in ascending order and that none of them runs past the end of the file.
+   */
+  private static final class ValueReader implements Iterator<String> {
+    private final MemorySegment mapped;
+    private final Path file;
+    private int remaining;
+    private long position;
+    private String previous = null;
+    private byte[] scratch = new byte[256];
+
+    ValueReader(MemorySegment mapped, long start, int count, Path file) {
+      this.mapped = mapped;
+      this.position = start;
+      this.remaining = count;
+      this.file = file;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return remaining > 0;
+    }
+
+    @Override
+    public String next() {
+      if (remaining == 0) {
+        throw new NoSuchElementException("No more values in the snapshot.");
+      }
+      long end = mapped.byteSize();
+      int length = position + Integer.BYTES <= end ? mapped.get(INT, position) : -1;
+      if (length < 0 || position + Integer.BYTES + length > end) {
+        throw new UncheckedIOException(new IOException("Truncated snapshot: " + file));
+      }
+      if (scratch.length < length) {
+        scratch = new byte[Math.max(length, scratch.length * 2)];
+      }
+      MemorySegment.copy(mapped, ValueLayout.JAVA_BYTE, position + Integer.BYTES, scratch, 0,
+          length);
+      String value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+      if (previous != null && previous.compareTo(value) > 0) {
+        throw new UncheckedIOException(new IOException("Snapshot values out of order: " + file));
+      }
+      position += Integer.BYTES + length;
+      remaining--;
+      previous = value;
+      return value;
+    }
+  }
+
+}
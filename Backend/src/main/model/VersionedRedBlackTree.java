@@ -0,0 +1,140 @@
+package Backend.src.main.model;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sorted collection that publishes every update as a new PersistentRedBlackTree through an atomic
+ * reference. Readers take the current version and work on it without locking while writers keep
+ * publishing newer versions; updates are lock-free and retry when another update was published
+ * first.
+ */
+public class VersionedRedBlackTree<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+  private final AtomicReference<PersistentRedBlackTree<T>> current;
+  private volatile Comparable<T> iteratorMin = null;
+  private volatile Comparable<T> iteratorMax = null;
+
+  /**
+   * Creates an empty collection that orders its values by their natural ordering.
+   */
+  public VersionedRedBlackTree() {
+    this(null);
+  }
+
+  /**
+   * Creates an empty collection that orders its values with the provided comparator.
+   *
+   * @param comparator the comparator that orders the values, or null for natural ordering
+   */
+  public VersionedRedBlackTree(Comparator<? super T> comparator) {
+    this.current = new AtomicReference<>(PersistentRedBlackTree.<T>empty(comparator));
+  }
+
+  /**
+   * @return the current version, which never changes and can be read without locking
+   */
+  public PersistentRedBlackTree<T> version() {
+    return current.get();
+  }
+
+  @Override
+  public void insert(T data) throws NullPointerException {
+    current.updateAndGet(version -> version.with(data));
+  }
+
+  @Override
+  public boolean remove(T data) throws NullPointerException {
+    while (true) {
+      PersistentRedBlackTree<T> version = current.get();
+      PersistentRedBlackTree<T> updated = version.without(data);
+      if (updated == version) {
+        return false;
+      }
+      if (current.compareAndSet(version, updated)) {
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public int removeAll(T data) throws NullPointerException {
+    while (true) {
+      PersistentRedBlackTree<T> version = current.get();
+      int count = version.count(data);
+      if (count == 0) {
+        return 0;
+      }
+      if (current.compareAndSet(version, version.withoutAll(data))) {
+        return count;
+      }
+    }
+  }
+
+  @Override
+  public boolean contains(Comparable<T> data) {
+    return current.get().contains(data);
+  }
+
+  @Override
+  public int size() {
+    return current.get().size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return current.get().isEmpty();
+  }
+
+  @Override
+  public void clear() {
+    current.set(PersistentRedBlackTree.<T>empty(current.get().comparator()));
+  }
+
+  /**
+   * Replaces the contents of an empty collection with values in ascending order in O(n) time.
+   *
+   * @param sorted the values in ascending order
+   * @throws IllegalStateException if the collection is not empty
+   */
+  void buildFromSorted(Iterator<? extends T> sorted) {
+    PersistentRedBlackTree<T> version = current.get();
+    if (!version.isEmpty()) {
+      throw new IllegalStateException("The collection is not empty.");
+    }
+    current.compareAndSet(version,
+        PersistentRedBlackTree.<T>fromSorted(sorted, version.comparator()));
+  }
+
+  @Override
+  public void setIteratorMin(Comparable<T> min) {
+    this.iteratorMin = min;
+  }
+
+  @Override
+  public void setIteratorMax(Comparable<T> max) {
+    this.iteratorMax = max;
+  }
+
+  /**
+   * Returns an iterator over the current version, limited by the minimum and maximum set through
+   * setIteratorMin and setIteratorMax. Updates made while it runs are not seen.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return current.get().iterator(iteratorMin, iteratorMax);
+  }
+
+  /**
+   * Returns an iterator over the values of the current version from min to max, both inclusive,
+   * ignoring the bounds set through setIteratorMin and setIteratorMax.
+   *
+   * @param min the minimum value to return, or null for no minimum
+   * @param max the maximum value to return, or null for no maximum
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    return current.get().iterator(min, max);
+  }
+}
@@ -0,0 +1,75 @@
+package Backend.src.main.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * Takes snapshots of the tree held by TreeService, on a schedule and on demand, and restores the
+ * latest snapshot and the write-ahead log written after it when the application starts.
+ */
+@Service
+public class SnapshotService {
+
+  private static final Logger log = LoggerFactory.getLogger(SnapshotService.class);
+
+  private final TreeService treeService;
+  private final Path file;
+
+  public SnapshotService(TreeService treeService,
+      @Value("${rbt.snapshot.path:data/tree.snapshot}") String path) {
+    this.treeService = treeService;
+    this.file = Paths.get(path);
+  }
+
+  /**
+   * Load the latest snapshot, if there is one, and replay the write-ahead log written after it
+   * when the application starts.
+   */
+  @PostConstruct
+  public void restore() throws IOException {
+    long start = System.nanoTime();
+    TreeService.Recovery recovery = treeService.recover(file);
+    log.info("Restored {} values from {} and replayed {} logged mutations in {} ms",
+        recovery.snapshotValues(), file, recovery.replayedEntries(),
+        (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * Take a snapshot every rbt.snapshot.interval (10 minutes by default).
+   */
+  @Scheduled(fixedDelayString = "${rbt.snapshot.interval:PT10M}",
+      initialDelayString = "${rbt.snapshot.interval:PT10M}")
+  public void scheduledSnapshot() {
+    try {
+      snapshot();
+    } catch (IOException e) {
+      log.error("Scheduled snapshot to {} failed", file, e);
+    }
+  }
+
+  /**
+   * Write a snapshot of the tree now, and return what was written.
+   */
+  public Map<String, Object> snapshot() throws IOException {
+    Path directory = file.toAbsolutePath().getParent();
+    if (directory != null) {
+      Files.createDirectories(directory);
+    }
+    long start = System.nanoTime();
+    int count = treeService.writeSnapshot(file);
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    log.info("Wrote {} values to {} in {} ms", count, file, millis);
+    return Map.of("values", count, "bytes", Files.size(file), "millis", millis,
+        "path", file.toString());
+  }
+}
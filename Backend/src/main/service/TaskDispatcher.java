@@ -0,0 +1,377 @@
+package Backend.src.main.service;
+
+import Backend.src.main.model.Task;
+import Backend.src.main.model.TimingWheel;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Runs the tasks of TaskScheduler when they are due. Tasks far in the future stay in the tree of
+ * the scheduler; once the horizon of a hierarchical timing wheel has moved on by 64 ticks and
+ * reaches the earliest of them, the dispatcher thread moves the tasks that came within it out of
+ * the tree in one pollDue, and the wheel then hands out the tasks of each tick in O(1) time per
+ * task. Between ticks with work the thread sleeps, and while there is nothing to do it sleeps
+ * until woken by schedule. Each due task runs on its own virtual thread, and at most a configured
+ * number of tasks of each priority run at the same time. The wheel follows the instant of the
+ * clock, which doesn't jump when the clock's time zone changes to or from daylight saving time.
+ * Due dates are converted to instants in the time zone of the clock; a due date that occurs twice
+ * when the clocks are turned back stands for its earlier occurrence.
+ */
+@Service
+public class TaskDispatcher {
+
+  private static final Logger log = LoggerFactory.getLogger(TaskDispatcher.class);
+
+  // two levels of 64 slots reach 4096 ticks ahead
+  private static final int SLOT_BITS = 6;
+  private static final int LEVELS = 2;
+  private static final long NEVER = Long.MAX_VALUE;
+  // lateness is counted in buckets of 100 microseconds up to 100 ms, and beyond in the last one
+  private static final int LATENESS_BUCKET_MICROS = 100;
+  private static final int LATENESS_BUCKETS = 1001;
+
+  private final TaskScheduler scheduler;
+  private final Clock clock;
+  private final ZoneId zone;
+  private final long tickMicros;
+  private final Consumer<? super Task> action;
+  // permits for the running tasks of priority 1, 2, ...; the last one also covers lower priorities
+  private final Semaphore[] running;
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+  // only used by the dispatcher thread
+  private final TimingWheel<Task> wheel;
+  // tasks handed to schedule that are due within reach of the wheel
+  private final ConcurrentLinkedQueue<Task> handedOver = new ConcurrentLinkedQueue<>();
+  // every task due by this time, in epoch microseconds, is in the wheel or on its way there; it is
+  // raised before the tasks are polled, so schedule either sees it raised or its task gets polled
+  private volatile long movedUntil;
+  // no task in the scheduler is due before this time, in epoch microseconds, except for tasks that
+  // were added after the dispatcher last looked; it starts out unknown
+  private final AtomicLong pendingFrom = new AtomicLong(Long.MIN_VALUE);
+  // the time the dispatcher thread sleeps until, in epoch microseconds, NEVER while it sleeps until
+  // woken, and Long.MIN_VALUE while it is awake
+  private volatile long parkedUntil = Long.MIN_VALUE;
+  private volatile int inWheel;
+  private volatile boolean open = true;
+  private final Thread dispatcher;
+
+  private final LongAdder fired = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder[] lateness = new LongAdder[LATENESS_BUCKETS];
+  private final AtomicLong maxLatenessMicros = new AtomicLong();
+
+  /**
+   * Creates the dispatcher with a tick of rbt.dispatcher.tick and the limits of running tasks per
+   * priority in rbt.dispatcher.concurrency. Due tasks are logged.
+   */
+  @Autowired
+  public TaskDispatcher(TaskScheduler scheduler,
+      @Value("${rbt.dispatcher.tick:PT0.001S}") String tick,
+      @Value("${rbt.dispatcher.concurrency:256,128,64,32,16}") int[] concurrency) {
+    this(scheduler, Clock.systemDefaultZone(), Duration.parse(tick.trim()), concurrency,
+        task -> log.debug("Task {} is due", task));
+  }
+
+  /**
+   * Creates the dispatcher and starts its thread.
+   *
+   * @param scheduler   the scheduler whose tasks to run
+   * @param clock       the clock that decides when a task is due
+   * @param tick        the granularity of the timing wheel, at least one microsecond
+   * @param concurrency how many tasks of priority 1, 2, ... may run at once; priorities beyond
+   *                    the last limit share it
+   * @param action      what running a task does
+   */
+  public TaskDispatcher(TaskScheduler scheduler, Clock clock, Duration tick, int[] concurrency,
+      Consumer<? super Task> action) {
+    if (tick.toNanos() < 1000) {
+      throw new IllegalArgumentException("The tick must be at least a microsecond");
+    }
+    if (concurrency.length == 0) {
+      throw new IllegalArgumentException("At least one concurrency limit is needed");
+    }
+    this.scheduler = scheduler;
+    this.clock = clock;
+    this.zone = clock.getZone();
+    this.tickMicros = tick.toNanos() / 1000;
+    this.action = action;
+    this.running = new Semaphore[concurrency.length];
+    for (int i = 0; i < concurrency.length; i++) {
+      if (concurrency[i] < 1) {
+        throw new IllegalArgumentException("Concurrency limits must be positive");
+      }
+      running[i] = new Semaphore(concurrency[i]);
+    }
+    for (int i = 0; i < lateness.length; i++) {
+      lateness[i] = new LongAdder();
+    }
+    this.wheel = new TimingWheel<>(SLOT_BITS, LEVELS, Math.floorDiv(now(), tickMicros));
+    this.movedUntil = wheel.nextTick() * tickMicros - 1;
+    this.dispatcher = Thread.ofPlatform().daemon().name("task-dispatcher")
+        .start(this::dispatchLoop);
+  }
+
+  /**
+   * Schedule a task to run when it is due. A task due within reach of the timing wheel goes
+   * straight to the dispatcher thread, and any other task waits in the scheduler, where it can
+   * still be cancelled. Either way the dispatcher thread is woken if it sleeps past the time it
+   * has to act on the task.
+   */
+  public void schedule(Task task) {
+    if (task == null) {
+      throw new IllegalArgumentException("Task cannot be null");
+    }
+    long due = micros(task.getDueDate());
+    if (open && due <= movedUntil && handOver(task, due)) {
+      return;
+    }
+    scheduler.addTask(task);
+    pendingFrom.accumulateAndGet(due, Math::min);
+    // the dispatcher may have polled the tasks due by this one meanwhile
+    if (open && due <= movedUntil && scheduler.cancel(task)) {
+      if (!handOver(task, due)) {
+        scheduler.addTask(task);
+      }
+    } else if (due - (tickMicros << SLOT_BITS * LEVELS) < parkedUntil) {
+      // the task comes within reach of the wheel before the dispatcher wakes up
+      LockSupport.unpark(dispatcher);
+    }
+  }
+
+  /**
+   * Return how many tasks ran and failed, how many wait in the timing wheel, and how late the
+   * tasks started, in milliseconds.
+   */
+  public Map<String, Object> stats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("fired", fired.sum());
+    stats.put("failed", failed.sum());
+    stats.put("inWheel", inWheel);
+    stats.put("latenessP50Millis", latenessPercentile(0.50));
+    stats.put("latenessP99Millis", latenessPercentile(0.99));
+    stats.put("latenessMaxMillis", maxLatenessMicros.get() / 1000.0);
+    return stats;
+  }
+
+  /**
+   * Stop dispatching, wait for the running tasks, and return the tasks that did not run yet to
+   * the scheduler. Tasks scheduled while the dispatcher closes go to the scheduler as well.
+   */
+  @PreDestroy
+  public void close() {
+    open = false;
+    LockSupport.unpark(dispatcher);
+    try {
+      dispatcher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (Task task = handedOver.poll(); task != null; task = handedOver.poll()) {
+      scheduler.addTask(task);
+    }
+    wheel.drain(scheduler::addTask);
+    inWheel = 0;
+    executor.close();
+  }
+
+  /**
+   * Queue a task for the dispatcher thread and wake the thread if it sleeps past the due date.
+   * close drains the queue only once, after the dispatcher is closed, so a task queued too late
+   * for that is taken back unless the dispatcher thread or close got it after all.
+   *
+   * @return false if the dispatcher was closed and the task was taken back
+   */
+  private boolean handOver(Task task, long due) {
+    handedOver.add(task);
+    if (!open && handedOver.removeIf(queued -> queued == task)) {
+      return false;
+    }
+    if (due < parkedUntil) {
+      LockSupport.unpark(dispatcher);
+    }
+    return true;
+  }
+
+  /**
+   * Start the tasks that are due, and move the tasks that came within reach into the wheel, then
+   * sleep until the next tick with due tasks or the next refill from the scheduler.
+   */
+  private void dispatchLoop() {
+    while (open) {
+      try {
+        for (Task task = handedOver.poll(); task != null; task = handedOver.poll()) {
+          addToWheel(task);
+        }
+        long tick = Math.floorDiv(now(), tickMicros);
+        if (tick >= wheel.nextTick()) {
+          wheel.advance(tick, this::fire);
+        }
+        // after the due tasks were started, since the tasks it moves are due much later
+        refill();
+      } catch (RuntimeException e) {
+        log.error("Dispatching tasks failed", e);
+        // a failed refill may have lost track of the earliest task of the scheduler
+        pendingFrom.set(Long.MIN_VALUE);
+      }
+      inWheel = wheel.size();
+      long wakeUp = wakeUpTime();
+      parkedUntil = wakeUp;
+      // schedule reads parkedUntil after it queues or adds a task, so a task that this check does
+      // not see yet unparks the thread
+      if (handedOver.isEmpty() && wakeUpTime() >= wakeUp) {
+        if (wakeUp == NEVER) {
+          LockSupport.park();
+        } else {
+          LockSupport.parkNanos(Math.min(wakeUp - now(), Long.MAX_VALUE / 1000) * 1000);
+        }
+      }
+      parkedUntil = Long.MIN_VALUE;
+    }
+  }
+
+  /**
+   * Once the horizon of the wheel has moved on by 64 ticks, move the tasks of the scheduler that
+   * are due by the new horizon into the wheel. The scheduler is only locked when its earliest task
+   * is within reach.
+   */
+  private void refill() {
+    long horizon = wheel.horizon() * tickMicros;
+    if (horizon - movedUntil < tickMicros << SLOT_BITS) {
+      return;
+    }
+    // raised before pendingFrom is read, so schedule either sees it raised or lowers pendingFrom
+    // in time for this check
+    movedUntil = horizon;
+    if (pendingFrom.get() > horizon) {
+      return;
+    }
+    pendingFrom.set(NEVER);
+    for (Task task : scheduler.pollDue(dateTime(horizon))) {
+      addToWheel(task);
+    }
+    Task next = scheduler.peekNextDue();
+    if (next != null) {
+      // the tasks due in the second of the next one are ordered by priority before their nanos
+      pendingFrom.accumulateAndGet(micros(next.getDueDate().withNano(0)), Math::min);
+    }
+  }
+
+  /**
+   * Return the time the dispatcher thread has to act next, in epoch microseconds: the start of
+   * the next tick with work in the wheel, or the time the horizon of the wheel reaches both the
+   * next 64 ticks and the earliest task of the scheduler, whichever comes first.
+   */
+  private long wakeUpTime() {
+    long busy = wheel.nextBusyTick();
+    long wakeUp = busy == Long.MAX_VALUE ? NEVER : busy * tickMicros;
+    long pending = pendingFrom.get();
+    if (pending != NEVER) {
+      long reach = Math.max(movedUntil + (tickMicros << SLOT_BITS), pending);
+      // the horizon after the clock reached tick t is t + 2^(SLOT_BITS * LEVELS)
+      long refill = Math.ceilDiv(reach, tickMicros) - (1L << SLOT_BITS * LEVELS);
+      wakeUp = Math.min(wakeUp, refill * tickMicros);
+    }
+    return wakeUp;
+  }
+
+  private void addToWheel(Task task) {
+    long due = micros(task.getDueDate());
+    if (!wheel.add(task, Math.ceilDiv(due, tickMicros))) {
+      scheduler.addTask(task);
+      pendingFrom.accumulateAndGet(due, Math::min);
+    }
+  }
+
+  /**
+   * Start a due task on a virtual thread, which waits for a permit of the priority of the task.
+   */
+  private void fire(Task task) {
+    Semaphore permits = running[Math.clamp(task.getPriority() - 1L, 0, running.length - 1)];
+    executor.execute(() -> {
+      permits.acquireUninterruptibly();
+      try {
+        recordLateness(now() - micros(task.getDueDate()));
+        action.accept(task);
+        fired.increment();
+      } catch (RuntimeException e) {
+        failed.increment();
+        log.warn("Task {} failed", task, e);
+      } finally {
+        permits.release();
+      }
+    });
+  }
+
+  private void recordLateness(long micros) {
+    long late = Math.max(0, micros);
+    lateness[(int) Math.min(LATENESS_BUCKETS - 1, late / LATENESS_BUCKET_MICROS)].increment();
+    maxLatenessMicros.accumulateAndGet(late, Math::max);
+  }
+
+  /**
+   * Return the lateness in milliseconds that the fraction p of the started tasks did not exceed,
+   * rounded up to the end of its bucket.
+   */
+  private double latenessPercentile(double p) {
+    long[] counts = new long[LATENESS_BUCKETS];
+    long total = 0;
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = lateness[i].sum();
+      total += counts[i];
+    }
+    long seen = 0;
+    for (int i = 0; i < counts.length - 1; i++) {
+      seen += counts[i];
+      if (seen > 0 && seen >= p * total) {
+        return (i + 1) * LATENESS_BUCKET_MICROS / 1000.0;
+      }
+    }
+    return total == 0 ? 0.0 : maxLatenessMicros.get() / 1000.0;
+  }
+
+  // the current instant of the clock in epoch microseconds
+  private long now() {
+    Instant now = clock.instant();
+    return micros(now.getEpochSecond(), now.getNano());
+  }
+
+  // the instant of a due date in the time zone of the clock, in epoch microseconds
+  private long micros(LocalDateTime time) {
+    return micros(time.atZone(zone).toEpochSecond(), time.getNano());
+  }
+
+  private static long micros(long seconds, int nanos) {
+    // dates hundreds of thousands of years away are pinned far into the past or future
+    if (Math.abs(seconds) >= Long.MAX_VALUE / 1_000_000) {
+      return seconds < 0 ? Long.MIN_VALUE / 2 : Long.MAX_VALUE / 2;
+    }
+    return seconds * 1_000_000 + nanos / 1000;
+  }
+
+  // the local time in the time zone of the clock at an instant in epoch microseconds
+  private LocalDateTime dateTime(long micros) {
+    return LocalDateTime.ofInstant(Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+        Math.floorMod(micros, 1_000_000) * 1000), zone);
+  }
+}
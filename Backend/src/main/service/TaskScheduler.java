@@ -0,0 +1,242 @@
+package Backend.src.main.service;
+
+import Backend.src.main.model.IterableRedBlackTree;
+import Backend.src.main.model.Task;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the pending tasks in a red-black tree ordered by due date and priority, so that the next
+ * task is found in O(log n) time and the k tasks that are due are taken out in O(log n + k) time
+ * by splitting the tree instead of removing them one by one.
+ */
+@Service
+public class TaskScheduler {
+
+  // a page steps over this many unwanted tasks one by one before it seeks past the rest of their
+  // run, since the next wanted task is often close by
+  private static final int STEPS_BEFORE_SEEK = 16;
+
+  private final IterableRedBlackTree<Task> tasks = new IterableRedBlackTree<>();
+  // tasks added while another thread held the lock; every holder of the lock moves them into the
+  // tree before it reads it, so they are never missed
+  private final ConcurrentLinkedQueue<Task> added = new ConcurrentLinkedQueue<>();
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * A page of tasks, and the cursor of the next page, which is null when this page was not full.
+   */
+  public record Page(List<Task> tasks, String next) {
+  }
+
+  /**
+   * Schedule a task. Adding never waits for the lock: a task added while the tree is busy is queued
+   * and inserted by whichever thread holds the lock next, together with the other queued tasks.
+   */
+  public void addTask(Task task) {
+    if (task == null) {
+      throw new IllegalArgumentException("Task cannot be null");
+    }
+    added.add(task);
+    if (lock.tryLock()) {
+      try {
+        insertAdded();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Return the task that pollDue will hand out first, or null if no task is pending. Tasks due in
+   * the same second come out by priority, so this is the earliest task to the second.
+   */
+  public Task peekNextDue() {
+    lock.lock();
+    try {
+      insertAdded();
+      return tasks.isEmpty() ? null : tasks.first();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Remove and return every task whose due date is not after now, ordered by due date and
+   * priority. The tasks due in seconds before now are split off the tree as a whole in O(log n)
+   * time. The tree orders the tasks due in the same second as now by priority before their
+   * fractions of a second, so the due ones among them are split off one priority at a time, which
+   * is O(p log n + k) for p priorities in that second.
+   */
+  public List<Task> pollDue(LocalDateTime now) {
+    if (now == null) {
+      throw new IllegalArgumentException("Time cannot be null");
+    }
+    List<Task> due = new ArrayList<>();
+    LocalDateTime second = now.withNano(0);
+    LocalDateTime endOfSecond = now.withNano(999_999_999);
+    lock.lock();
+    try {
+      insertAdded();
+      for (Task task : tasks.extractRange(null, Task.dueFrom(now))) {
+        due.add(task);
+      }
+      // first is the first task of its priority in this second; the next one starts after the
+      // last task of that priority
+      for (Task first = tasks.ceiling(Task.dueFrom(now));
+          first != null && first.getDueDate().withNano(0).equals(second);
+          first = tasks.ceiling(Task.dueBy(endOfSecond, first.getPriority()))) {
+        if (!first.getDueDate().isAfter(now)) {
+          for (Task task : tasks.extractRange(first, Task.dueBy(now, first.getPriority()))) {
+            due.add(task);
+          }
+        }
+      }
+      return due;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Remove a pending task. Returns false if the task was not pending, for example because it was
+   * already polled.
+   */
+  public boolean cancel(Task task) {
+    if (task == null) {
+      throw new IllegalArgumentException("Task cannot be null");
+    }
+    lock.lock();
+    try {
+      insertAdded();
+      return tasks.remove(task);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Return limit pending tasks due from from to to, both inclusive and null for no bound, and of
+   * the given priority unless it is null, in the order they will be polled, or fewer on the last
+   * page and more when the tasks after the last one are equal to it. The page starts after the
+   * task that the cursor after stands for, so paging stays consistent while tasks are added and
+   * polled. Pages are read straight from the tree in O(log n + limit) time; a priority filter
+   * adds O(log n) for each due second the page passes.
+   */
+  public Page page(LocalDateTime from, LocalDateTime to, Integer priority, int limit,
+      String after) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Limit must be positive");
+    }
+    Comparable<Task> start = after != null ? fromCursor(after)
+        : from == null ? null
+        : priority == null ? Task.dueFrom(from) : Task.dueFrom(from, priority);
+    List<Task> found = new ArrayList<>();
+    lock.lock();
+    try {
+      insertAdded();
+      Iterator<Task> iterator = tasks.iteratorAfter(start, false);
+      int skipped = 0;
+      while (iterator.hasNext()) {
+        Task task = iterator.next();
+        // a cursor can't tell equal tasks apart, so a page never ends between them
+        if (found.size() >= limit && task.compareTo(found.get(found.size() - 1)) != 0) {
+          break;
+        }
+        LocalDateTime due = task.getDueDate();
+        // within a second the tasks are ordered by priority before their fractions of a second,
+        // so the tasks of one priority are contiguous there and the scan can seek past a run
+        Comparable<Task> skipTo = null;
+        if (to != null && due.isAfter(to)) {
+          if (due.withNano(0).isAfter(to)) {
+            break;
+          }
+          skipTo = Task.dueBy(to.withNano(999_999_999), task.getPriority());
+        } else if (priority != null && task.getPriority() < priority) {
+          skipTo = Task.dueFrom(due, priority);
+        } else if (priority != null && task.getPriority() > priority) {
+          skipTo = Task.dueBy(due.withNano(999_999_999), Integer.MAX_VALUE);
+        } else if (from != null && due.isBefore(from)) {
+          skipTo = Task.dueBy(from.minusNanos(1), task.getPriority());
+        } else {
+          found.add(task);
+        }
+        if (skipTo == null) {
+          skipped = 0;
+        } else if (++skipped == STEPS_BEFORE_SEEK) {
+          iterator = tasks.iteratorAfter(skipTo, false);
+          skipped = 0;
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    String next = found.size() >= limit ? cursor(found.get(found.size() - 1)) : null;
+    return new Page(found, next);
+  }
+
+  /**
+   * Return the number of pending tasks.
+   */
+  public int size() {
+    lock.lock();
+    try {
+      insertAdded();
+      return tasks.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Move the queued tasks into the tree, as one sorted batch. Must be called with the lock held.
+   * The batch holds tasks of other callers too, but it can't fail on one of them: Task checks
+   * every field it compares when it is created, so any two tasks can be ordered.
+   */
+  private void insertAdded() {
+    Task task = added.poll();
+    if (task == null) {
+      return;
+    }
+    List<Task> batch = new ArrayList<>();
+    for (; task != null; task = added.poll()) {
+      batch.add(task);
+    }
+    tasks.insertAll(batch);
+  }
+
+  /**
+   * Encode the position of a task in the order of the tree as an opaque cursor. The due date and
+   * priority alone don't tell tasks apart, so the name and start of the task are part of it too.
+   */
+  private static String cursor(Task task) {
+    String key = task.getDueDate() + "|" + task.getPriority() + "|" + task.getStart() + "|"
+        + task.getName();
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(key.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decode a cursor into a task that sorts exactly where the task it was made from did.
+   */
+  private static Task fromCursor(String cursor) {
+    try {
+      String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+          .split("\\|", 4);
+      return new Task(parts[3], LocalDateTime.parse(parts[2]), LocalDateTime.parse(parts[0]),
+          Integer.parseInt(parts[1]), "");
+    } catch (IllegalArgumentException | DateTimeParseException
+        | ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Invalid cursor", e);
+    }
+  }
+}
@@ -1,44 +1,557 @@
 package Backend.src.main.service;
 
+import Backend.src.main.model.ConcurrentSortedCollection;
+import Backend.src.main.model.IterableRedBlackTree;
+import Backend.src.main.model.IterableSortedCollection;
+import Backend.src.main.model.OffHeapRedBlackTree;
+import Backend.src.main.model.PersistentRedBlackTree;
 import Backend.src.main.model.RBTNode;
 import Backend.src.main.model.RedBlackTree;
+import Backend.src.main.model.RedBlackTree.TraversalBudget;
+import Backend.src.main.model.TreeSnapshot;
+import Backend.src.main.model.VersionedRedBlackTree;
+import Backend.src.main.service.WriteAheadLog.Durability;
+import Backend.src.main.service.WriteAheadLog.Entry;
+import Backend.src.main.service.WriteAheadLog.Operation;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
 
 @Service
 public class TreeService {
 
-  private final RedBlackTree<String> tree = new RedBlackTree<>();
+  private final IterableSortedCollection<String> tree;
+  // null when rbt.wal.enabled is false
+  private final WriteAheadLog wal;
+
+  // Two locks, because neither does both jobs. Writers serialize on the write lock of exclusion,
+  // and readers take its read lock only when an optimistic read failed; mutations of the
+  // concurrent backend share it too. It is fair, so a reader queues behind a waiting writer. A
+  // StampedLock has no fairness policy: its readLock() lets a reader in whenever no writer holds
+  // the lock, so a steady stream of readers, or of concurrent-backend mutations, could starve a
+  // writer or a snapshot that is waiting. A ReentrantReadWriteLock has no stamps to validate an
+  // optimistic read with, though
+  private final ReentrantReadWriteLock exclusion = new ReentrantReadWriteLock(true);
+  // taken only by writers, inside the write lock of exclusion, where it never has to wait; it is
+  // kept for its stamps, which tell an optimistic read whether a writer got in the way
+  private final StampedLock lock = new StampedLock();
+  private final LongAdder optimisticReads = new LongAdder();
+  private final LongAdder optimisticRetries = new LongAdder();
+  private final LongAdder lockedReads = new LongAdder();
+  private final LongAdder writes = new LongAdder();
+  private final LongAdder writeWaitNanos = new LongAdder();
+  // orders the logged mutations of each value when the concurrent backend is updated without the
+  // write lock
+  private final Object[] stripes = new Object[64];
+
+  /**
+   * Summary of what was loaded when the tree was recovered on startup.
+   */
+  public record Recovery(int snapshotValues, long snapshotSequence, int replayedEntries) {
+  }
+
+  /**
+   * Creates the service with the tree implementation selected by the rbt.tree.backend property:
+   * "on-heap" (the default) for an IterableRedBlackTree, "off-heap" for an OffHeapRedBlackTree
+   * that keeps its nodes outside the Java heap, "concurrent" for a ConcurrentSortedCollection
+   * that is updated and read without the service lock, or "persistent" for a VersionedRedBlackTree
+   * whose immutable versions are read without any lock. With rbt.tree.multiset the on-heap tree
+   * counts duplicates in the node of their value, like the concurrent and persistent backends
+   * always do. Unless rbt.wal.enabled is false, every mutation is also appended to a write-ahead
+   * log in rbt.wal.directory, and rbt.wal.durability decides when a mutation is acknowledged:
+   * "per-op" after its own fsync, "grouped" (the default) after an fsync shared with the mutations
+   * that arrived at the same time, or "async" right away.
+   */
+  public TreeService(@Value("${rbt.tree.backend:on-heap}") String backend,
+      @Value("${rbt.tree.multiset:false}") boolean multiset,
+      @Value("${rbt.wal.enabled:true}") boolean walEnabled,
+      @Value("${rbt.wal.directory:data/wal}") String walDirectory,
+      @Value("${rbt.wal.durability:grouped}") String durability,
+      @Value("${rbt.wal.group-commit-window:PT0S}") String groupCommitWindow) {
+    this.tree = createTree(backend, multiset);
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new Object();
+    }
+    if (!walEnabled) {
+      this.wal = null;
+      return;
+    }
+    try {
+      this.wal = new WriteAheadLog(Paths.get(walDirectory),
+          Durability.valueOf(durability.trim().toUpperCase(Locale.ROOT).replace('-', '_')),
+          Duration.parse(groupCommitWindow.trim()));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Can't open the write-ahead log in " + walDirectory, e);
+    }
+  }
+
+  /**
+   * Create an empty tree for the named backend, counting duplicates in one node when multiset is
+   * true and the backend is on-heap.
+   */
+  static IterableSortedCollection<String> createTree(String backend, boolean multiset) {
+    switch (backend.trim().toLowerCase(Locale.ROOT)) {
+      case "on-heap":
+        return new IterableRedBlackTree<>(null, multiset);
+      case "off-heap":
+        return new OffHeapRedBlackTree();
+      case "concurrent":
+        return new ConcurrentSortedCollection<>();
+      case "persistent":
+        return new VersionedRedBlackTree<>();
+      default:
+        throw new IllegalArgumentException("Unknown tree backend: " + backend);
+    }
+  }
 
   /**
-   * Insert a new value into the red-black tree.
+   * Insert a new value into the red-black tree. Returns once the insert is as durable as the
+   * write-ahead log promises; the wait happens outside the tree lock so that concurrent inserts can
+   * share one fsync.
    */
   public void insert(String value) {
     if (value == null || value.isEmpty()) {
       throw new IllegalArgumentException("Value cannot be null or empty");
     }
-    tree.insert(value);
+    mutate(Operation.INSERT, value);
+  }
+
+  /**
+   * Remove a value from the red-black tree: a single occurrence, or every occurrence when all is
+   * true. Returns the number of values removed.
+   */
+  public int remove(String value, boolean all) {
+    if (value == null || value.isEmpty()) {
+      throw new IllegalArgumentException("Value cannot be null or empty");
+    }
+    return mutate(all ? Operation.REMOVE_ALL : Operation.REMOVE, value);
+  }
+
+  /**
+   * Insert a batch of values. The batch is sorted outside the lock, logged as one group of records,
+   * and merged into the tree in a single pass when the tree supports it, so the whole batch costs
+   * one lock acquisition and one fsync.
+   */
+  public void insertBatch(List<String> values) {
+    for (String value : values) {
+      if (value == null || value.isEmpty()) {
+        throw new IllegalArgumentException("Value cannot be null or empty");
+      }
+    }
+    if (values.isEmpty()) {
+      return;
+    }
+    List<String> sorted = new ArrayList<>(values);
+    Collections.sort(sorted);
+    long sequence = 0;
+    // exclusive even for the concurrent backend, whose single mutations share the read lock
+    long stamp = writeLock();
+    try {
+      if (wal != null) {
+        sequence = wal.appendAll(Operation.INSERT, sorted);
+      }
+      if (tree instanceof IterableRedBlackTree<String> onHeap) {
+        onHeap.insertAll(sorted);
+      } else {
+        // consecutive sorted values descend mostly the same path
+        for (String value : sorted) {
+          tree.insert(value);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      unlockWrite(stamp);
+    }
+    awaitDurable(sequence);
+  }
+
+  /**
+   * Log and apply a mutation, then wait until it is durable. Returns the number of values changed.
+   */
+  private int mutate(Operation operation, String value) {
+    long sequence;
+    int changed;
+    if (tree instanceof ConcurrentSortedCollection) {
+      writes.increment();
+      if (wal == null) {
+        return apply(operation, value);
+      }
+      // mutations of different values commute, so the log only has to order the mutations of each
+      // value; the read lock is shared by every mutation and only keeps snapshots out
+      readLock();
+      try {
+        synchronized (stripes[value.hashCode() & (stripes.length - 1)]) {
+          sequence = log(operation, value);
+          changed = apply(operation, value);
+        }
+      } finally {
+        unlockRead();
+      }
+    } else {
+      long stamp = writeLock();
+      try {
+        sequence = log(operation, value);
+        changed = apply(operation, value);
+      } finally {
+        unlockWrite(stamp);
+      }
+    }
+    awaitDurable(sequence);
+    return changed;
+  }
+
+  /**
+   * Check whether the tree contains a value.
+   */
+  public boolean contains(String value) {
+    if (value == null || value.isEmpty()) {
+      throw new IllegalArgumentException("Value cannot be null or empty");
+    }
+    if (tree instanceof RedBlackTree<String> onHeap) {
+      return read(() -> onHeap.contains(value, new TraversalBudget(onHeap.size())));
+    }
+    return read(() -> tree.contains(value));
+  }
+
+  /**
+   * Return up to limit values from from to to, both inclusive and null for no bound, in ascending
+   * order.
+   */
+  public List<String> range(String from, String to, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Limit must be positive");
+    }
+    if (tree instanceof IterableRedBlackTree<String> onHeap) {
+      return read(() -> onHeap.range(from, to, limit, new TraversalBudget(onHeap.size())));
+    }
+    return read(() -> {
+      List<String> values = new ArrayList<>();
+      Iterator<String> iterator = tree.iterator(from, to);
+      while (values.size() < limit && iterator.hasNext()) {
+        values.add(iterator.next());
+      }
+      return values;
+    });
   }
 
   /**
-   * Return the current tree structure as a nested JSON-compatible map.
+   * Return the number of values in the tree.
+   */
+  public int size() {
+    return read(tree::size);
+  }
+
+  /**
+   * Return how often readers had to retry under the read lock and how long writers waited for the
+   * write lock.
+   */
+  public Map<String, Object> lockStats() {
+    long optimistic = optimisticReads.sum();
+    long retries = optimisticRetries.sum();
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("optimisticReads", optimistic);
+    stats.put("optimisticRetries", retries);
+    stats.put("retryRate", optimistic == 0 ? 0.0 : (double) retries / optimistic);
+    stats.put("lockedReads", lockedReads.sum());
+    stats.put("writes", writes.sum());
+    stats.put("writeWaitMillis", writeWaitNanos.sum() / 1_000_000);
+    return stats;
+  }
+
+  /**
+   * Run a read-only query. The query first runs without a lock, and its result is kept if no
+   * writer took the lock meanwhile. Otherwise, and always for the off-heap tree, whose memory a
+   * writer can move or free, the query runs again under the read lock.
+   */
+  private <R> R read(Supplier<R> query) {
+    // the concurrent backend is safe to read while it changes, and every read of the persistent
+    // backend works on one immutable version
+    if (tree instanceof ConcurrentSortedCollection || tree instanceof VersionedRedBlackTree) {
+      return query.get();
+    }
+    if (!(tree instanceof OffHeapRedBlackTree)) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp != 0) {
+        optimisticReads.increment();
+        try {
+          R result = query.get();
+          if (lock.validate(stamp)) {
+            return result;
+          }
+        } catch (RuntimeException e) {
+          // a concurrent write can show the query an inconsistent tree, but a query that fails
+          // on a consistent one would only fail again
+          if (lock.validate(stamp)) {
+            throw e;
+          }
+        }
+        optimisticRetries.increment();
+      }
+    }
+    readLock();
+    try {
+      lockedReads.increment();
+      return query.get();
+    } finally {
+      unlockRead();
+    }
+  }
+
+  /**
+   * Take the read lock, waiting behind the writers that asked for the write lock first.
+   */
+  private void readLock() {
+    exclusion.readLock().lock();
+  }
+
+  private void unlockRead() {
+    exclusion.readLock().unlock();
+  }
+
+  /**
+   * Take the write lock, recording how long it took. Returns the stamp to pass to unlockWrite.
+   */
+  private long writeLock() {
+    long start = System.nanoTime();
+    exclusion.writeLock().lock();
+    writeWaitNanos.add(System.nanoTime() - start);
+    writes.increment();
+    return lock.writeLock();
+  }
+
+  private void unlockWrite(long stamp) {
+    lock.unlockWrite(stamp);
+    exclusion.writeLock().unlock();
+  }
+
+  /**
+   * Append a mutation to the write-ahead log before it is applied. Must be called while holding the
+   * lock that orders the mutations, so that the log order matches the order in which they are
+   * applied.
+   */
+  private long log(Operation operation, String value) {
+    if (wal == null) {
+      return 0;
+    }
+    try {
+      return wal.append(operation, value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Wait until a logged mutation is durable.
+   */
+  private void awaitDurable(long sequence) {
+    if (wal == null) {
+      return;
+    }
+    try {
+      wal.awaitDurable(sequence);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Apply a mutation to the tree without logging it. Returns the number of values changed.
+   */
+  private int apply(Operation operation, String value) {
+    switch (operation) {
+      case INSERT:
+        tree.insert(value);
+        return 1;
+      case REMOVE:
+        return tree.remove(value) ? 1 : 0;
+      default:
+        return tree.removeAll(value);
+    }
+  }
+
+  /**
+   * Return the current tree structure as a nested JSON-compatible map. The concurrent backend has
+   * no tree structure, so its values are returned as a sorted list instead.
    */
   public Map<String, Object> getTree() {
-    return Map.of("root", nodeToMap((RBTNode<String>) tree.root));
+    return read(() -> {
+      Map<String, Object> result = new HashMap<>();
+      if (tree instanceof OffHeapRedBlackTree offHeap) {
+        result.put("root", slotToMap(offHeap, offHeap.rootSlot()));
+      } else if (tree instanceof VersionedRedBlackTree<String> versioned) {
+        result.put("root", versionNodeToMap(versioned.version().getRoot()));
+      } else if (tree instanceof ConcurrentSortedCollection) {
+        // a skip list has no tree structure to show
+        List<String> values = new ArrayList<>();
+        tree.forEach(values::add);
+        result.put("root", null);
+        result.put("values", values);
+      } else {
+        RedBlackTree<String> onHeap = (RedBlackTree<String>) tree;
+        result.put("root", nodeToMap(onHeap.getRoot(), 0, new TraversalBudget(onHeap.size())));
+      }
+      return result;
+    });
+  }
+
+  /**
+   * Write every value of the tree to a snapshot file. The write-ahead log is rolled to a new
+   * segment first, and once the snapshot is on disk the segments it covers are deleted. Returns
+   * the number of values written.
+   */
+  public int writeSnapshot(Path file) throws IOException {
+    int count;
+    long sequence;
+    if (tree instanceof VersionedRedBlackTree<String> versioned) {
+      // pair the current version with the log position and write it while the writers go on
+      PersistentRedBlackTree<String> version;
+      long stamp = writeLock();
+      try {
+        sequence = wal == null ? 0 : wal.roll();
+        version = versioned.version();
+      } finally {
+        unlockWrite(stamp);
+      }
+      count = TreeSnapshot.write(version, file, sequence);
+      if (wal != null) {
+        wal.deleteUpTo(sequence);
+      }
+      return count;
+    }
+    // writers are kept out, so the snapshot matches the log position it records; mutations of the
+    // concurrent backend share the read lock, so it takes the write lock instead
+    boolean exclusive = tree instanceof ConcurrentSortedCollection;
+    long stamp = 0;
+    if (exclusive) {
+      stamp = writeLock();
+    } else {
+      readLock();
+    }
+    try {
+      sequence = wal == null ? 0 : wal.roll();
+      count = TreeSnapshot.write(tree, file, sequence);
+    } finally {
+      if (exclusive) {
+        unlockWrite(stamp);
+      } else {
+        unlockRead();
+      }
+    }
+    if (wal != null) {
+      wal.deleteUpTo(sequence);
+    }
+    return count;
+  }
+
+  /**
+   * Replace the contents of the tree with the values of a snapshot file, if it exists, and then
+   * replay the mutations the write-ahead log holds after that snapshot.
+   */
+  public Recovery recover(Path snapshot) throws IOException {
+    long stamp = writeLock();
+    try {
+      return recoverLocked(snapshot);
+    } finally {
+      unlockWrite(stamp);
+    }
+  }
+
+  private Recovery recoverLocked(Path snapshot) throws IOException {
+    tree.clear();
+    int values = 0;
+    long sequence = 0;
+    if (Files.exists(snapshot)) {
+      sequence = TreeSnapshot.sequence(snapshot);
+      values = TreeSnapshot.read(snapshot, tree);
+    }
+    int replayed = 0;
+    if (wal != null) {
+      // a log that lost its segments would otherwise number new mutations within the snapshot,
+      // and the next recovery would skip them
+      wal.skipPast(sequence);
+      replayed = wal.replay(sequence, (Entry entry) -> apply(entry.operation(), entry.value()));
+    }
+    return new Recovery(values, sequence, replayed);
+  }
+
+  /**
+   * Flush the write-ahead log and free the memory held by the tree when the application shuts
+   * down.
+   */
+  @PreDestroy
+  public void close() throws IOException {
+    long stamp = writeLock();
+    try {
+      if (wal != null) {
+        wal.close();
+      }
+    } finally {
+      if (tree instanceof OffHeapRedBlackTree offHeap) {
+        offHeap.close();
+      }
+      unlockWrite(stamp);
+    }
   }
 
   /**
    * Recursively convert an RBTNode into a map for JSON serialization.
    */
-  private Map<String, Object> nodeToMap(RBTNode<String> n) {
+  private Map<String, Object> nodeToMap(RBTNode<String> n, int depth, TraversalBudget budget) {
     if (n == null) return null;
+    budget.visit(depth);
     Map<String, Object> map = new HashMap<>();
     map.put("data", n.getData());
+    map.put("count", n.getCount());
+    map.put("color", n.isRed() ? "RED" : "BLACK");
+    map.put("left", nodeToMap(n.getLeft(), depth + 1, budget));
+    map.put("right", nodeToMap(n.getRight(), depth + 1, budget));
+    return map;
+  }
+
+  /**
+   * Recursively convert a node of a persistent tree version into a map for JSON serialization.
+   */
+  private Map<String, Object> versionNodeToMap(PersistentRedBlackTree.Node<String> n) {
+    if (n == null) return null;
+    Map<String, Object> map = new HashMap<>();
+    map.put("data", n.getValue());
+    map.put("count", n.getCount());
     map.put("color", n.isRed() ? "RED" : "BLACK");
-    map.put("left", nodeToMap(n.getLeft()));
-    map.put("right", nodeToMap(n.getRight()));
+    map.put("left", versionNodeToMap(n.getLeft()));
+    map.put("right", versionNodeToMap(n.getRight()));
+    return map;
+  }
+
+  /**
+   * Recursively convert a node of an off-heap tree into a map for JSON serialization.
+   */
+  private Map<String, Object> slotToMap(OffHeapRedBlackTree offHeap, int slot) {
+    if (slot == 0) return null;
+    Map<String, Object> map = new HashMap<>();
+    map.put("data", offHeap.keyAt(slot));
+    map.put("color", offHeap.isRedSlot(slot) ? "RED" : "BLACK");
+    map.put("left", slotToMap(offHeap, offHeap.leftSlot(slot)));
+    map.put("right", slotToMap(offHeap, offHeap.rightSlot(slot)));
     return map;
   }
+
 }
@@ -0,0 +1,519 @@
+package Backend.src.main.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of tree mutations. Every record gets the next sequence number and is framed as
+ *
+ * <pre>
+ *   int  payload length in bytes
+ *   int  CRC32C of the sequence, operation and payload
+ *   long sequence number
+ *   byte operation
+ *   the UTF-8 bytes of the value
+ * </pre>
+ *
+ * The log is split into segment files named after the first sequence number they hold, so the
+ * segments covered by a snapshot can be deleted. Appends only copy the record into a memory buffer;
+ * how the buffer reaches the disk depends on the durability mode:
+ * <ul>
+ *   <li>PER_OP: awaitDurable writes and forces the log before returning.</li>
+ *   <li>GROUPED: a flusher thread forces the log with one fsync for every group of appends;
+ *   awaitDurable waits for the fsync that covers the record. The records appended while one fsync
+ *   runs form the next group, and a positive group commit window makes the flusher wait that long
+ *   before each fsync to collect bigger groups.</li>
+ *   <li>ASYNC: the flusher thread forces the log the same way but awaitDurable returns at once, so
+ *   a crash can lose the appends that were not forced yet.</li>
+ * </ul>
+ */
+public final class WriteAheadLog implements Closeable {
+
+  /**
+   * How long a caller waits before its append is known to be on disk.
+   */
+  public enum Durability { PER_OP, GROUPED, ASYNC }
+
+  /**
+   * The mutations that can be logged.
+   */
+  public enum Operation { INSERT, REMOVE, REMOVE_ALL }
+
+  /**
+   * A record read back from the log.
+   */
+  public record Entry(long sequence, Operation operation, String value) {
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+  private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES + 1;
+  private static final String PREFIX = "wal-";
+  private static final String SUFFIX = ".log";
+
+  private final Path directory;
+  private final Durability durability;
+  private final long windowNanos;
+  private final Thread flusher;
+
+  // guards the buffers and sequence numbers below; waiters for durability wait on it
+  private final Object lock = new Object();
+  // records appended but not yet written to the segment
+  private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+  // the buffer that replaces pending while a flush writes it out
+  private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+  // sequence number of the last appended record, and of the last record forced to disk
+  private long lastSequence;
+  private long durableSequence;
+  // failure of the last flush, reported to every later caller
+  private IOException failure = null;
+  private boolean open = true;
+
+  // guards the segment channel; only one flush or roll runs at a time
+  private final Object ioLock = new Object();
+  private FileChannel segment;
+  private long segmentStart;
+  private final CRC32C crc = new CRC32C();
+
+  /**
+   * Opens the log in the provided directory, creating it if needed. The tail of the newest segment
+   * is checked record by record, and a record torn by a crash is cut off.
+   *
+   * @param directory   the directory holding the segment files
+   * @param durability  when appended records are forced to disk
+   * @param groupCommit how long the flusher waits for more appends before each fsync
+   * @throws IOException if the log can't be opened
+   */
+  public WriteAheadLog(Path directory, Durability durability, Duration groupCommit)
+      throws IOException {
+    this.directory = directory;
+    this.durability = durability;
+    this.windowNanos = Math.max(0, groupCommit.toNanos());
+    Files.createDirectories(directory);
+    List<Path> segments = segments();
+    if (segments.isEmpty()) {
+      openSegment(1);
+      lastSequence = 0;
+    } else {
+      Path newest = segments.get(segments.size() - 1);
+      long start = startOf(newest);
+      long[] last = {start - 1};
+      long validBytes = scan(newest, entry -> last[0] = entry.sequence(), true);
+      try (FileChannel channel = FileChannel.open(newest, StandardOpenOption.WRITE)) {
+        channel.truncate(validBytes);
+      }
+      segment = FileChannel.open(newest, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      segmentStart = start;
+      lastSequence = last[0];
+    }
+    durableSequence = lastSequence;
+    if (durability == Durability.PER_OP) {
+      flusher = null;
+    } else {
+      flusher = Thread.ofPlatform().daemon().name("wal-flusher").start(this::flushLoop);
+    }
+  }
+
+  /**
+   * @return the sequence number of the last appended record, or 0 if nothing was ever logged
+   */
+  public long lastSequence() {
+    synchronized (lock) {
+      return lastSequence;
+    }
+  }
+
+  /**
+   * Appends a record to the log buffer. The record is not durable until awaitDurable returns for
+   * its sequence number. Callers that need the log order to match the order in which they apply
+   * mutations must serialize their appends.
+   *
+   * @param operation the mutation
+   * @param value     the value the mutation applies to
+   * @return the sequence number of the record
+   * @throws IOException if the log is closed or an earlier flush failed
+   */
+  public long append(Operation operation, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    synchronized (lock) {
+      checkUsable();
+      long sequence = ++lastSequence;
+      writeRecord(sequence, operation, bytes);
+      lock.notifyAll();
+      return sequence;
+    }
+  }
+
+  /**
+   * Appends one record per value, with consecutive sequence numbers, in a single step. Like append,
+   * the records are not durable until awaitDurable returns for the last sequence number.
+   *
+   * @param operation the mutation applied to every value
+   * @param values    the values, in the order they are applied
+   * @return the sequence number of the last record, or lastSequence() if values is empty
+   * @throws IOException if the log is closed or an earlier flush failed
+   */
+  public long appendAll(Operation operation, List<String> values) throws IOException {
+    List<byte[]> encoded = new ArrayList<>(values.size());
+    for (String value : values) {
+      encoded.add(value.getBytes(StandardCharsets.UTF_8));
+    }
+    synchronized (lock) {
+      checkUsable();
+      for (byte[] bytes : encoded) {
+        writeRecord(++lastSequence, operation, bytes);
+      }
+      lock.notifyAll();
+      return lastSequence;
+    }
+  }
+
+  /**
+   * Encodes one record at the end of the pending buffer, growing it if needed.
+   */
+  private void writeRecord(long sequence, Operation operation, byte[] bytes) {
+    int recordBytes = HEADER_BYTES + bytes.length;
+    if (pending.remaining() < recordBytes) {
+      int capacity = Math.max(pending.capacity() * 2, pending.position() + recordBytes);
+      pending = ByteBuffer.allocate(capacity).put(pending.flip());
+    }
+    int start = pending.position();
+    pending.putInt(bytes.length).putInt(0).putLong(sequence)
+        .put((byte) operation.ordinal()).put(bytes);
+    crc.reset();
+    crc.update(pending.slice(start + 8, recordBytes - 8));
+    pending.putInt(start + 4, (int) crc.getValue());
+  }
+
+  /**
+   * Waits until the record with the provided sequence number is durable, as defined by the
+   * durability mode of this log.
+   *
+   * @param sequence a sequence number returned by append
+   * @throws IOException if the record can't be written to disk
+   */
+  public void awaitDurable(long sequence) throws IOException {
+    switch (durability) {
+      case ASYNC:
+        return;
+      case PER_OP:
+        flush();
+        return;
+      default:
+        synchronized (lock) {
+          while (durableSequence < sequence && failure == null && open) {
+            try {
+              lock.wait();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new IOException("Interrupted while waiting for the log", e);
+            }
+          }
+          if (durableSequence < sequence) {
+            checkUsable();
+            throw new IOException("Log closed before the record was written");
+          }
+        }
+    }
+  }
+
+  private void checkUsable() throws IOException {
+    if (failure != null) {
+      throw new IOException("Write-ahead log failed", failure);
+    }
+    if (!open) {
+      throw new IOException("Write-ahead log is closed");
+    }
+  }
+
+  /**
+   * Body of the flusher thread: waits for appends, lets the group commit window collect more of
+   * them, and then forces them all with one flush. Appends that arrive during the flush are left
+   * for the next one.
+   */
+  private void flushLoop() {
+    while (true) {
+      synchronized (lock) {
+        while (open && lastSequence == durableSequence) {
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (!open) {
+          return;
+        }
+      }
+      if (windowNanos > 0) {
+        LockSupport.parkNanos(windowNanos);
+      }
+      try {
+        flush();
+      } catch (IOException e) {
+        // the failure fails every later append, but in ASYNC mode nobody waits for a flush, so
+        // a log that stopped flushing would otherwise go unnoticed; a closed log just stops
+        synchronized (lock) {
+          if (open) {
+            log.error("Flushing the write-ahead log in {} failed, it accepts no more appends",
+                directory, e);
+          }
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Writes every pending record to the current segment and forces it to disk, then wakes the
+   * callers waiting for those records.
+   */
+  private void flush() throws IOException {
+    synchronized (ioLock) {
+      ByteBuffer batch;
+      long upTo;
+      synchronized (lock) {
+        checkUsable();
+        if (durableSequence == lastSequence) {
+          return;
+        }
+        batch = pending;
+        pending = spare;
+        upTo = lastSequence;
+      }
+      try {
+        batch.flip();
+        while (batch.hasRemaining()) {
+          segment.write(batch);
+        }
+        segment.force(false);
+      } catch (IOException e) {
+        synchronized (lock) {
+          failure = e;
+          lock.notifyAll();
+        }
+        throw e;
+      }
+      batch.clear();
+      synchronized (lock) {
+        spare = batch;
+        durableSequence = upTo;
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Forces every appended record to disk and starts a new segment, so that everything logged so
+   * far lives in segments that a snapshot can cover completely.
+   *
+   * @return the sequence number of the last record before the new segment
+   * @throws IOException if the log can't be written
+   */
+  public long roll() throws IOException {
+    synchronized (ioLock) {
+      flush();
+      long last = lastSequence();
+      if (last >= segmentStart) {
+        segment.close();
+        openSegment(last + 1);
+      }
+      return last;
+    }
+  }
+
+  /**
+   * Moves the log past a sequence number that is covered elsewhere, typically by a snapshot, when
+   * the log has not reached it: the next record then gets the number after it instead of reusing
+   * a number that a replay after the snapshot would skip. This happens when segments were lost or
+   * deleted without the snapshot. The current segment is replaced by one that starts after the
+   * sequence number, and deleted if it holds no records.
+   *
+   * @param sequence the last sequence number covered elsewhere
+   * @return true if the log was moved, false if it had already reached the sequence number
+   * @throws IOException if the log can't be written
+   */
+  public boolean skipPast(long sequence) throws IOException {
+    synchronized (ioLock) {
+      flush();
+      synchronized (lock) {
+        checkUsable();
+        if (lastSequence >= sequence) {
+          return false;
+        }
+        log.warn("The write-ahead log in {} ends at sequence {} before {}, continuing after it",
+            directory, lastSequence, sequence);
+        boolean empty = lastSequence < segmentStart;
+        segment.close();
+        if (empty) {
+          Files.delete(segmentFile(segmentStart));
+        }
+        openSegment(sequence + 1);
+        lastSequence = sequence;
+        durableSequence = sequence;
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Deletes every segment whose records all have a sequence number of at most the provided one,
+   * typically because a snapshot covers them. The current segment is never deleted.
+   *
+   * @param sequence the last sequence number covered elsewhere
+   * @return the number of segments deleted
+   * @throws IOException if a segment can't be deleted
+   */
+  public int deleteUpTo(long sequence) throws IOException {
+    synchronized (ioLock) {
+      List<Path> segments = segments();
+      int deleted = 0;
+      for (int i = 0; i + 1 < segments.size(); i++) {
+        long lastInSegment = startOf(segments.get(i + 1)) - 1;
+        if (lastInSegment > sequence) {
+          break;
+        }
+        Files.delete(segments.get(i));
+        deleted++;
+      }
+      return deleted;
+    }
+  }
+
+  /**
+   * Reads every record with a sequence number greater than the provided one, oldest first.
+   *
+   * @param afterSequence records up to this sequence number are skipped
+   * @param consumer      receives the records
+   * @return the number of records passed to the consumer
+   * @throws IOException if a segment can't be read or holds a corrupt record
+   */
+  public int replay(long afterSequence, Consumer<Entry> consumer) throws IOException {
+    synchronized (ioLock) {
+      List<Path> segments = segments();
+      int[] replayed = {0};
+      for (int i = 0; i < segments.size(); i++) {
+        if (i + 1 < segments.size() && startOf(segments.get(i + 1)) - 1 <= afterSequence) {
+          continue;
+        }
+        scan(segments.get(i), entry -> {
+          if (entry.sequence() > afterSequence) {
+            consumer.accept(entry);
+            replayed[0]++;
+          }
+        }, i == segments.size() - 1);
+      }
+      return replayed[0];
+    }
+  }
+
+  /**
+   * Reads the records of one segment. A record that is cut short or fails its checksum ends the
+   * scan when it is in the newest segment (a write torn by a crash); anywhere else it means the
+   * log is corrupt.
+   *
+   * @return the number of bytes holding valid records
+   */
+  private long scan(Path file, Consumer<Entry> consumer, boolean newest) throws IOException {
+    byte[] content = Files.readAllBytes(file);
+    ByteBuffer buffer = ByteBuffer.wrap(content);
+    CRC32C check = new CRC32C();
+    Operation[] operations = Operation.values();
+    while (buffer.remaining() >= HEADER_BYTES) {
+      int start = buffer.position();
+      int length = buffer.getInt(start);
+      int recordBytes = HEADER_BYTES + length;
+      boolean valid = length >= 0 && length <= buffer.remaining() - HEADER_BYTES;
+      if (valid) {
+        check.reset();
+        check.update(content, start + 8, recordBytes - 8);
+        valid = (int) check.getValue() == buffer.getInt(start + 4)
+            && content[start + 16] >= 0 && content[start + 16] < operations.length;
+      }
+      if (!valid) {
+        if (newest) {
+          return start;
+        }
+        throw new IOException("Corrupt log record at byte " + start + " of " + file);
+      }
+      long sequence = buffer.getLong(start + 8);
+      Operation operation = operations[content[start + 16]];
+      String value = new String(content, start + HEADER_BYTES, length, StandardCharsets.UTF_8);
+      consumer.accept(new Entry(sequence, operation, value));
+      buffer.position(start + recordBytes);
+    }
+    if (buffer.hasRemaining() && !newest) {
+      throw new IOException("Truncated log segment " + file);
+    }
+    return buffer.position();
+  }
+
+  private void openSegment(long start) throws IOException {
+    segment = FileChannel.open(segmentFile(start), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    segmentStart = start;
+  }
+
+  private Path segmentFile(long start) {
+    return directory.resolve(String.format("%s%020d%s", PREFIX, start, SUFFIX));
+  }
+
+  /**
+   * @return the segment files of this log, oldest first
+   */
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(p -> p.getFileName().toString().startsWith(PREFIX)
+              && p.getFileName().toString().endsWith(SUFFIX))
+          .sorted()
+          .toList();
+    }
+  }
+
+  private static long startOf(Path segment) {
+    String name = segment.getFileName().toString();
+    return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+  }
+
+  /**
+   * Forces every appended record to disk, stops the flusher and closes the current segment.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      synchronized (lock) {
+        open = false;
+        lock.notifyAll();
+      }
+      if (flusher != null) {
+        try {
+          flusher.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      synchronized (ioLock) {
+        segment.close();
+      }
+    }
+  }
+}
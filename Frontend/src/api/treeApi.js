@@ -6,6 +6,21 @@ export async function insertNode(value) {
     });
   }
   
+  export async function insertBatch(values) {
+    const res = await fetch("http://localhost:8080/api/insert/batch", {
+      method: "POST",
+      headers: {"Content-Type": "application/json"},
+      body: JSON.stringify(values)
+    });
+    return res.json();
+  }
+
+  export async function deleteNode(value) {
+    await fetch(`http://localhost:8080/api/tree/${encodeURIComponent(value)}`, {
+      method: "DELETE"
+    });
+  }
+
   export async function getTree() {
     const res = await fetch("http://localhost:8080/api/tree");
     return res.json();
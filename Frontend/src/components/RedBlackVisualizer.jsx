@@ -1,6 +1,6 @@
 // P102/frontend/src/components/RedBlackVisualizer.jsx
 import React, { useEffect, useState } from "react";
-import { getTree, insertNode } from "../api/treeApi";
+import { deleteNode, getTree, insertBatch, insertNode } from "../api/treeApi";
 import NodeComponent from "./NodeComponent";
 
 function computePositions(root) {
@@ -52,6 +52,22 @@ export default function RedBlackVisualizer() {
     await refresh();
   }
 
+  // inserts the comma-separated values of the input in one batch
+  async function handleInsertAll() {
+    const values = value.split(",").map(v => v.trim()).filter(v => v);
+    if (!values.length) return;
+    await insertBatch(values);
+    setValue("");
+    await refresh();
+  }
+
+  async function handleDelete() {
+    if (!value) return;
+    await deleteNode(value);
+    setValue("");
+    await refresh();
+  }
+
   const positions = computePositions(tree);
   const mapByData = new Map(positions.map(p => [p.node.data, p]));
 
@@ -60,6 +76,8 @@ export default function RedBlackVisualizer() {
       <form onSubmit={handleInsert} style={{ display: "flex", gap: 8, marginBottom: 12 }}>
         <input value={value} onChange={(e) => setValue(e.target.value)} placeholder="Insert value (e.g., J, A, 5)" />
         <button type="submit">Insert</button>
+        <button type="button" onClick={handleInsertAll}>Insert all</button>
+        <button type="button" onClick={handleDelete}>Delete</button>
         <button type="button" onClick={refresh}>Refresh</button>
       </form>
 
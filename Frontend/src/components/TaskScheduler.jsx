@@ -1,8 +1,13 @@
 import React, { useState, useEffect } from "react";
 import axios from "axios";
 
+const PAGE_SIZE = 50;
+
 export default function TaskScheduler() {
   const [tasks, setTasks] = useState([]);
+  // cursor of the next page, or null when every task is shown
+  const [next, setNext] = useState(null);
+  const [priorityFilter, setPriorityFilter] = useState("");
   const [form, setForm] = useState({
     name: "",
     dueDate: "",
@@ -10,22 +15,26 @@ export default function TaskScheduler() {
     description: "",
   });
 
-  // Fetch all tasks
-  const fetchTasks = async () => {
-    const res = await axios.get("http://localhost:8080/api/tasks/all");
-    setTasks(res.data);
+  // Fetch one page of tasks, starting after the given cursor
+  const fetchPage = async (after) => {
+    const params = { limit: PAGE_SIZE };
+    if (priorityFilter) params.priority = priorityFilter;
+    if (after) params.after = after;
+    const res = await axios.get("http://localhost:8080/api/tasks", { params });
+    setTasks((shown) => (after ? [...shown, ...res.data.tasks] : res.data.tasks));
+    setNext(res.data.next);
   };
 
   useEffect(() => {
-    fetchTasks();
-  }, []);
+    fetchPage(null);
+  }, [priorityFilter]);
 
   // Handle form submission
   const handleSubmit = async (e) => {
     e.preventDefault();
     await axios.post("http://localhost:8080/api/tasks/add", form);
     setForm({ name: "", dueDate: "", priority: "3", description: "" });
-    fetchTasks();
+    fetchPage(null);
   };
 
   return (
@@ -80,9 +89,23 @@ export default function TaskScheduler() {
       </form>
 
       <div>
-        <h3 className="text-lg font-semibold mb-2 text-gray-700">
-          Scheduled Tasks
-        </h3>
+        <div className="flex justify-between items-center mb-2">
+          <h3 className="text-lg font-semibold text-gray-700">
+            Scheduled Tasks
+          </h3>
+          <select
+            value={priorityFilter}
+            onChange={(e) => setPriorityFilter(e.target.value)}
+            className="border p-1 rounded text-sm"
+          >
+            <option value="">All priorities</option>
+            <option value="1">Priority 1</option>
+            <option value="2">Priority 2</option>
+            <option value="3">Priority 3</option>
+            <option value="4">Priority 4</option>
+            <option value="5">Priority 5</option>
+          </select>
+        </div>
         {tasks.length === 0 ? (
           <p className="text-gray-500">No tasks scheduled yet.</p>
         ) : (
@@ -114,6 +137,14 @@ export default function TaskScheduler() {
             ))}
           </ul>
         )}
+        {next && (
+          <button
+            onClick={() => fetchPage(next)}
+            className="mt-4 w-full border py-2 rounded text-gray-700 hover:bg-gray-100"
+          >
+            Load more
+          </button>
+        )}
       </div>
     </div>
   );